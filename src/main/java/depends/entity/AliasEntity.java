@@ -28,6 +28,7 @@ import depends.relations.Inferer;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 public class AliasEntity extends depends.entity.Entity {
 	private depends.entity.Entity referToEntity = new EmptyTypeEntity();
@@ -53,6 +54,10 @@ public class AliasEntity extends depends.entity.Entity {
 			referToEntity = entity;
 	}
 
+	public String getOriginName() {
+		return originName;
+	}
+
 	public Collection<depends.entity.TypeEntity> getResolvedTypeParameters() {
 		if (!(referToEntity instanceof DecoratedEntity))
 			return new ArrayList<>();
@@ -67,14 +72,14 @@ public class AliasEntity extends depends.entity.Entity {
 		return origin.getResolvedAnnotations();
 	}
 
-	public ArrayList<depends.entity.VarEntity> getVars() {
+	public List<depends.entity.VarEntity> getVars() {
 		if (!(referToEntity instanceof ContainerEntity))
 			return new ArrayList<>();
 		ContainerEntity origin = (ContainerEntity) referToEntity;
 		return origin.getVars();
 	}
 
-	public ArrayList<FunctionEntity> getFunctions() {
+	public List<FunctionEntity> getFunctions() {
 		if (!(referToEntity instanceof ContainerEntity))
 			return new ArrayList<>();
 		ContainerEntity origin = (ContainerEntity) referToEntity;
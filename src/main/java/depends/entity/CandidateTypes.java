@@ -29,11 +29,12 @@ import depends.relations.Relation;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 
 public class CandidateTypes extends depends.entity.TypeEntity {
 	private List<depends.entity.TypeEntity> candidateTypes;
+	/* functions of all candidate types, rebuilt if any candidate type changed */
+	private volatile CandidateFunctions candidateFunctions;
 
 	public CandidateTypes(List<depends.entity.TypeEntity> candidateTypes) {
 		super("candidateTypes", null, -1);
@@ -63,12 +64,13 @@ public class CandidateTypes extends depends.entity.TypeEntity {
 	}
  	
 	@Override
-	public ArrayList<FunctionEntity> getFunctions() {
- 		ArrayList<FunctionEntity> result = new ArrayList<>();
-		for (depends.entity.TypeEntity type:candidateTypes) {
-			result.addAll(type.getFunctions());
-		}
-		return result;
+	public List<FunctionEntity> getFunctions() {
+		CandidateFunctions cached = candidateFunctions;
+		if (cached!=null && cached.isCurrent(candidateTypes))
+			return cached.functions;
+		cached = new CandidateFunctions(candidateTypes);
+		candidateFunctions = cached;
+		return cached.functions;
 	}
 	
  	@Override
@@ -134,7 +136,7 @@ public class CandidateTypes extends depends.entity.TypeEntity {
 	}
 
 	@Override
-	public ArrayList<VarEntity> getVars() {
+	public List<VarEntity> getVars() {
 		System.err.println("error: getVars should not been invoked");
 		return super.getVars();
 	}
@@ -146,15 +148,15 @@ public class CandidateTypes extends depends.entity.TypeEntity {
 	}
 
 	@Override
-	public HashMap<Object, depends.entity.Expression> expressions() {
+	public List<depends.entity.Expression> expressions() {
 		System.err.println("error: expressions should not been invoked");
 		return super.expressions();
 	}
 
 	@Override
-	public void addExpression(Object key, Expression expression) {
+	public void addExpression(Expression expression) {
 		System.err.println("error: addExpression should not been invoked");
-		super.addExpression(key, expression);
+		super.addExpression(expression);
 	}
 
 	@Override
@@ -242,7 +244,7 @@ public class CandidateTypes extends depends.entity.TypeEntity {
 	}
 
 	@Override
-	public ArrayList<Relation> getRelations() {
+	public List<Relation> getRelations() {
 		System.err.println("error: getRelations should not been invoked");
 		return super.getRelations();
 	}
@@ -272,7 +274,7 @@ public class CandidateTypes extends depends.entity.TypeEntity {
 	}
 
 	@Override
-	public void setQualifiedName(String qualifiedName) {
+	public void setQualifiedName(QualifiedName qualifiedName) {
 		System.err.println("error: setQualifiedName should not been invoked");
 		super.setQualifiedName(qualifiedName);
 	}
@@ -284,9 +286,9 @@ public class CandidateTypes extends depends.entity.TypeEntity {
 	}
 
 	@Override
-	public String getQualifiedName(boolean overrideFileWithPackage) {
+	public QualifiedName getQualifiedNameNode(boolean overrideFileWithPackage) {
 		System.err.println("error: getQualifiedName should not been invoked");
-		return super.getQualifiedName(overrideFileWithPackage);
+		return super.getQualifiedNameNode(overrideFileWithPackage);
 	}
 
 	
@@ -308,4 +310,33 @@ public class CandidateTypes extends depends.entity.TypeEntity {
 		return super.getDisplayName();
 	}
  	
+
+	/**
+	 * Functions of the candidate types, with the versions of the types they are collected from
+	 */
+	private static class CandidateFunctions {
+		final ArrayList<FunctionEntity> functions = new ArrayList<>();
+		final List<depends.entity.TypeEntity> types;
+		final int[] versions;
+
+		CandidateFunctions(List<depends.entity.TypeEntity> candidateTypes) {
+			this.types = new ArrayList<>(candidateTypes);
+			this.versions = new int[types.size()];
+			for (int i=0;i<versions.length;i++) {
+				versions[i] = types.get(i).getVersion();
+				functions.addAll(types.get(i).getFunctions());
+			}
+		}
+
+		boolean isCurrent(List<depends.entity.TypeEntity> candidateTypes) {
+			if (candidateTypes.size()!=types.size())
+				return false;
+			for (int i=0;i<versions.length;i++) {
+				depends.entity.TypeEntity type = candidateTypes.get(i);
+				if (type!=types.get(i) || type.getVersion()!=versions[i])
+					return false;
+			}
+			return true;
+		}
+	}
 }
@@ -30,7 +30,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * ContainerEntity for example file, class, method, etc.
@@ -38,22 +40,20 @@ import java.util.HashMap;
  */
 public abstract class ContainerEntity extends DecoratedEntity {
 	private static final Logger logger = LoggerFactory.getLogger(ContainerEntity.class);
-
-	private ArrayList<depends.entity.VarEntity> vars;
-	private ArrayList<FunctionEntity> functions;
-	private HashMap<Object, depends.entity.Expression> expressions;
-	private ArrayList<depends.entity.Expression> expressionList;
-	private Collection<String> mixins;
-	private Collection<ContainerEntity> resolvedMixins;
+	/* containers with fewer members are looked up by scan */
+	private static final int MEMBER_INDEX_THRESHOLD = 8;
+
+	/* collections are the shared empty list until the first item added */
+	private List<depends.entity.VarEntity> vars = Collections.emptyList();
+	private List<FunctionEntity> functions = Collections.emptyList();
+	private List<depends.entity.Expression> expressionList = Collections.emptyList();
+	private List<String> mixins = Collections.emptyList();
+	private List<ContainerEntity> resolvedMixins = Collections.emptyList();
+	private volatile MemberIndex<FunctionEntity> functionIndex;
+	private volatile MemberIndex<VarEntity> varIndex;
 
 	public ContainerEntity(String rawName, depends.entity.Entity parent, Integer id) {
 		super(rawName, parent, id);
-		vars = new ArrayList<>();
-		functions = new ArrayList<>();
-		mixins = new ArrayList<>();
-		resolvedMixins = new ArrayList<>();
-		expressions = new HashMap<>();
-		expressionList = new  ArrayList<>();
 	}
 
 
@@ -62,28 +62,27 @@ public abstract class ContainerEntity extends DecoratedEntity {
 		if (logger.isDebugEnabled()) {
 			logger.debug("var found: "+var.getRawName() +  ":" + var.getRawType());
 		}
-		this.vars.add(var);
+		this.vars = addTo(this.vars, var);
 	}
 
-	public ArrayList<depends.entity.VarEntity> getVars() {
+	public List<depends.entity.VarEntity> getVars() {
 		return this.vars;
 	}
 
 	public void addFunction(depends.entity.FunctionEntity functionEntity) {
-		this.functions.add(functionEntity);
+		this.functions = addTo(this.functions, functionEntity);
 	}
 
-	public ArrayList<FunctionEntity> getFunctions() {
+	public List<FunctionEntity> getFunctions() {
 		return this.functions;
 	}
 
-	public HashMap<Object, depends.entity.Expression> expressions() {
-		return expressions;
+	public List<depends.entity.Expression> expressions() {
+		return expressionList;
 	}
 
-	public void addExpression(Object key, depends.entity.Expression expression) {
-		expressions.put(key, expression);
-		expressionList.add(expression);
+	public void addExpression(depends.entity.Expression expression) {
+		expressionList = addTo(expressionList, expression);
 	}
 
 
@@ -106,7 +105,9 @@ public abstract class ContainerEntity extends DecoratedEntity {
 		}
 	}
 
-	private Collection<ContainerEntity> identiferToContainerEntity(Inferer inferer, Collection<String> identifiers) {
+	private List<ContainerEntity> identiferToContainerEntity(Inferer inferer, Collection<String> identifiers) {
+		if (identifiers.isEmpty())
+			return Collections.emptyList();
 		ArrayList<ContainerEntity> r = new ArrayList<>();
 		for (String identifier : identifiers) {
 			depends.entity.Entity entity = inferer.resolveName(this, identifier, true);
@@ -125,40 +126,50 @@ public abstract class ContainerEntity extends DecoratedEntity {
 	 */
 	public void resolveExpressions(Inferer inferer) {
 		for (depends.entity.Expression expression : expressionList) {
-			//1. if expression's type existed, break;
-			if (expression.getType() != null)
-				continue;
-			if (expression.isDot){ //wait for previous
-				continue;
-			}
-			if (expression.rawType==null && expression.identifier ==null)
-				continue;
+			resolveExpression(expression, inferer);
+		}
+	}
 
-			//2. if expression's rawType existed, directly infer type by rawType
-			//   if expression's rawType does not existed, infer type based on identifiers
-			if (expression.rawType != null) {
-				expression.setType(inferer.inferTypeFromName(this, expression.rawType),null,inferer);
-				if (expression.getType() !=null) {
-					 continue;
-				}
+	/**
+	 * Resolve the expression's type
+	 * @param expression
+	 * @param inferer
+	 */
+	private void resolveExpression(Expression expression, Inferer inferer) {
+		//1. if expression's type existed, break;
+		if (expression.getType() != null)
+			return;
+		if (expression.isDot){ //wait for previous
+			return;
+		}
+		if (expression.rawType==null && expression.identifier ==null)
+			return;
+
+		//2. if expression's rawType existed, directly infer type by rawType
+		//   if expression's rawType does not existed, infer type based on identifiers
+		if (expression.rawType != null) {
+			Entity entity = inferer.resolveName(this, expression.rawType, expression.getRawTypeSymbol(), true);
+			expression.setType(entity==null?null:entity.getType(),null,inferer);
+			if (expression.getType() !=null) {
+				 return;
 			}
-			if (expression.identifier!=null) {
-				Entity entity = inferer.resolveName(this, expression.identifier, true);
-				if (entity!=null) {
-					expression.setType(entity.getType(),entity,inferer);
-					continue;
+		}
+		if (expression.identifier!=null) {
+			Entity entity = inferer.resolveName(this, expression.identifier, expression.getIdentifierSymbol(), true);
+			if (entity!=null) {
+				expression.setType(entity.getType(),entity,inferer);
+				return;
+			}
+			if (expression.isCall) {
+				depends.entity.FunctionEntity func = this.lookupFunctionInVisibleScope(expression.identifier);
+				if (func!=null) {
+					expression.setType(func.getType(),func,inferer);
 				}
-				if (expression.isCall) {
-					depends.entity.FunctionEntity func = this.lookupFunctionInVisibleScope(expression.identifier);
-					if (func!=null) {
-						expression.setType(func.getType(),func,inferer);
-					}
-				}else {
-
-					depends.entity.VarEntity varEntity = this.lookupVarInVisibleScope(expression.identifier);
-					if (varEntity!=null) {
-						expression.setType( varEntity.getType(),varEntity,inferer);
-					}
+			}else {
+
+				depends.entity.VarEntity varEntity = this.lookupVarInVisibleScope(expression.identifier);
+				if (varEntity!=null) {
+					expression.setType(varEntity.getType(),varEntity,inferer);
 				}
 			}
 		}
@@ -231,6 +242,9 @@ public abstract class ContainerEntity extends DecoratedEntity {
 	 * @return
 	 */
 	public depends.entity.FunctionEntity lookupFunctionLocally(String functionName) {
+		MemberIndex<FunctionEntity> index = functionIndex();
+		if (index!=null)
+			return index.lookup(functionName);
 		for (FunctionEntity func : getFunctions()) {
 			if (func.getRawName().equals(functionName))
 				return func;
@@ -238,6 +252,22 @@ public abstract class ContainerEntity extends DecoratedEntity {
 		return null;
 	}
 
+	/**
+	 * The index of functions, or null if the functions should be scanned directly
+	 * (too few functions, or the functions are not the container's own, e.g. candidate types)
+	 */
+	private MemberIndex<FunctionEntity> functionIndex() {
+		List<FunctionEntity> functions = getFunctions();
+		if (functions!=this.functions || functions.size()<MEMBER_INDEX_THRESHOLD)
+			return null;
+		MemberIndex<FunctionEntity> index = functionIndex;
+		if (index==null || index.indexedCount!=functions.size()) {
+			index = new MemberIndex<>(functions);
+			functionIndex = index;
+		}
+		return index;
+	}
+
 	/**
 	 * The entry point of lookup var. It will treat multi-declare entities and normal
 	 * entity differently.
@@ -270,18 +300,69 @@ public abstract class ContainerEntity extends DecoratedEntity {
 	}
 
 	public depends.entity.VarEntity lookupVarLocally(String varName) {
-		for (VarEntity var:getVars()) {
-			if (var.getRawName().equals(varName))
-				return var;
+		List<VarEntity> vars = getVars();
+		if (vars!=this.vars || vars.size()<MEMBER_INDEX_THRESHOLD) {
+			for (VarEntity var:vars) {
+				if (var.getRawName().equals(varName))
+					return var;
+			}
+			return null;
 		}
-		return null;
+		MemberIndex<VarEntity> index = varIndex;
+		if (index==null || index.indexedCount!=vars.size()) {
+			index = new MemberIndex<>(vars);
+			varIndex = index;
+		}
+		return index.lookup(varName);
 	}
 
 	public void addMixin(String moduleName) {
-		mixins.add(moduleName);
+		mixins = addTo(mixins, intern(moduleName));
+	}
+
+	public Collection<String> getMixins() {
+		return mixins;
 	}
 
 	public Collection<ContainerEntity> getResolvedMixins() {
 		return resolvedMixins;
 	}
+
+	/**
+	 * Set the resolved mixins directly, used to restore the resolved entity
+	 */
+	public void restoreResolvedMixins(List<ContainerEntity> resolvedMixins) {
+		this.resolvedMixins = trimmed(resolvedMixins);
+	}
+
+	@Override
+	public void compact() {
+		super.compact();
+		vars = trimmed(vars);
+		functions = trimmed(functions);
+		expressionList = trimmed(expressionList);
+		mixins = trimmed(mixins);
+	}
+
+	/**
+	 * Members indexed by raw name. Of the members with same name (e.g. overloads), only the 
+	 * first declared one is kept, which is the one a scan finds. 
+	 * The index is rebuilt if members are added after it is built.
+	 */
+	private static class MemberIndex<T extends Entity> {
+		final int indexedCount;
+		final HashMap<String, T> memberByName;
+
+		MemberIndex(List<T> members) {
+			indexedCount = members.size();
+			memberByName = new HashMap<>(members.size()*4/3+1);
+			for (T member:members) {
+				memberByName.putIfAbsent(member.getRawName(), member);
+			}
+		}
+
+		T lookup(String name) {
+			return memberByName.get(name);
+		}
+	}
 }
@@ -28,28 +28,31 @@ import depends.relations.Inferer;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public abstract class DecoratedEntity extends depends.entity.Entity {
-	private Collection<String> typeParameters; // Generic type parameters like <T>, <String>, <? extends Object>
-	private Collection<String> annotations = new ArrayList<>();
-	private Collection<depends.entity.TypeEntity> resolvedTypeParameters = new ArrayList<>();
-	private Collection<depends.entity.TypeEntity> resolvedAnnotations = new ArrayList<>();
+	/* collections are the shared empty list until the first item added */
+	private List<String> typeParameters = Collections.emptyList(); // Generic type parameters like <T>, <String>, <? extends Object>
+	private List<String> annotations = Collections.emptyList();
+	private Collection<depends.entity.TypeEntity> resolvedTypeParameters = Collections.emptyList();
+	private Collection<depends.entity.TypeEntity> resolvedAnnotations = Collections.emptyList();
 	
 	public DecoratedEntity(String rawName, Entity parent, Integer id) {
 		super(rawName, parent, id);
-		typeParameters = new ArrayList<>();
 	}
 	
 	public void addTypeParameter(List<String> typeArguments) {
-		typeParameters.addAll(typeArguments);
+		for (String typeArgument:typeArguments) {
+			typeParameters = addTo(typeParameters, intern(typeArgument));
+		}
 	}
 	public void addAnnotation(String name) {
-		this.annotations.add(name);
+		this.annotations = addTo(this.annotations, intern(name));
 	}
 	
 	public void addTypeParameter(String typeName) {
-		this.typeParameters.add(typeName);
+		this.typeParameters = addTo(this.typeParameters, intern(typeName));
 	}
 	
 	/**
@@ -57,10 +60,18 @@ public abstract class DecoratedEntity extends depends.entity.Entity {
 	 * Should be override in sub-classes 
 	 */
 	public void inferLocalLevelEntities(Inferer inferer) {
-		resolvedTypeParameters = identiferToTypes(inferer, typeParameters);
-		resolvedAnnotations = identiferToTypes(inferer, annotations);
+		resolvedTypeParameters = typeParameters.isEmpty()?Collections.emptyList():identiferToTypes(inferer, typeParameters);
+		resolvedAnnotations = annotations.isEmpty()?Collections.emptyList():identiferToTypes(inferer, annotations);
 	}
 	
+	public Collection<String> getTypeParameters() {
+		return typeParameters;
+	}
+
+	public Collection<String> getAnnotations() {
+		return annotations;
+	}
+
 	public Collection<depends.entity.TypeEntity> getResolvedTypeParameters() {
 		return resolvedTypeParameters;
 	}
@@ -70,6 +81,21 @@ public abstract class DecoratedEntity extends depends.entity.Entity {
 		return resolvedAnnotations;
 	}
 
+	/**
+	 * Set the resolved types directly, used to restore the resolved entity
+	 */
+	public void restoreResolvedTypes(List<depends.entity.TypeEntity> resolvedTypeParameters, List<depends.entity.TypeEntity> resolvedAnnotations) {
+		this.resolvedTypeParameters = trimmed(resolvedTypeParameters);
+		this.resolvedAnnotations = trimmed(resolvedAnnotations);
+	}
+
+	@Override
+	public void compact() {
+		super.compact();
+		typeParameters = trimmed(typeParameters);
+		annotations = trimmed(annotations);
+	}
+
 	public boolean isGenericTypeParameter(String rawType) {
 		if (this.typeParameters.contains(rawType)) return true;
 		if (this.getParent()==null || !(this.getParent() instanceof depends.entity.ContainerEntity))
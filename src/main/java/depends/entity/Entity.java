@@ -26,9 +26,12 @@ package depends.entity;
 
 import depends.relations.Inferer;
 import depends.relations.Relation;
+import depends.relations.RelationStore;
+import depends.util.SymbolTable;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -39,12 +42,16 @@ import java.util.List;
  */
 public abstract class Entity {
 	int id=-1;
-	String qualifiedName = null;
+	/* the node in the name tree of repo; the name string is built on demand */
+	QualifiedName qualifiedName = null;
 	String rawName = "";
+	/* the symbol id of raw name, which is interned */
+	int rawNameSymbol = SymbolTable.NO_SYMBOL;
 	Entity parent;
 	private MultiDeclareEntities mutliDeclare = null;
-	private List<Entity> children = new ArrayList<>();
-    ArrayList<Relation> relations = new ArrayList<>();
+	/* collections are the shared empty list until the first item added */
+	private List<Entity> children = Collections.emptyList();
+	private List<Relation> relations = Collections.emptyList();
 
 	
     public Entity(String rawName, Entity parent, Integer id) {
@@ -52,9 +59,9 @@ public abstract class Entity {
 		this.rawName = rawName;
 		this.parent = parent;
 		this.id = id;
-		if (parent!=null)
-			parent.children.add(this);
 		deduceQualifiedName();
+		if (parent!=null)
+			parent.addChild(this);
 	}
 
     /**
@@ -63,26 +70,31 @@ public abstract class Entity {
      * Rule 3: if parent exists but no qualified name exists or empty, the name is equal to raw name
      * Rule 4: otherwise, qualified name = parent_qualfied_name + "."+rawName
      * Rule 5: make sure the qualified name do not start with '.'
+     * The name is in the name tree of parent; without parent, it is detached 
+     * until the entity is added into a repo (see {@link #moveToNameTree(QualifiedName)})
      */
 	private void deduceQualifiedName() {
-		rawName = rawName.replace("::","." );
-		if (this.rawName.startsWith(".")) {
-			this.qualifiedName = this.rawName.substring(1);
-			return; //already qualified
-		}
-		if (parent==null) {
-			this.qualifiedName = this.rawName;
-			return;
+		String rawName = this.rawName.replace("::","." );
+		QualifiedName parentName = parent==null?null:parent.getQualifiedNameNode(true);
+		if (parentName==null) {
+			this.qualifiedName = QualifiedName.detached(rawName.startsWith(".")?rawName.substring(1):rawName);
+		} else if (rawName.startsWith(".")) {
+			this.qualifiedName = parentName.getRoot().append(rawName, 1); //already qualified
+		} else {
+			this.qualifiedName= parentName.append(rawName);
 		}
-		if (parent.getQualifiedName(true)==null) {
-			this.qualifiedName = this.rawName;
-			return;
-		}
-		if (parent.getQualifiedName(true).isEmpty()) {
-			this.qualifiedName = rawName;
+		internRawName(rawName);
+	}
+
+	/**
+	 * Move the detached name of the entity (e.g. the entity created without parent) 
+	 * into the name tree of the given root; it is called when the entity is added into a repo
+	 */
+	public void moveToNameTree(QualifiedName root) {
+		QualifiedName name = this.qualifiedName;
+		if (name==null || !name.isDetached())
 			return;
-		}
-		this.qualifiedName= parent.getQualifiedName(true)+"." + rawName;
+		setQualifiedName(root.append(name.toString()));
 	}
 
 
@@ -90,20 +102,70 @@ public abstract class Entity {
 		return rawName;
 	}
 
+	/**
+	 * The symbol id of raw name; entities with the same raw name have the same symbol id
+	 */
+	public int getRawNameSymbol() {
+		return rawNameSymbol;
+	}
+
+	/* the raw name is interned by the table of the name tree; a detached name has no symbol */
+	private void internRawName(String rawName) {
+		SymbolTable symbols = getSymbols();
+		if (symbols==null) {
+			this.rawName = rawName;
+			this.rawNameSymbol = SymbolTable.NO_SYMBOL;
+			return;
+		}
+		SymbolTable.Symbol symbol = symbols.symbolOf(rawName);
+		this.rawName = symbol.name;
+		this.rawNameSymbol = symbol.id;
+	}
+
+	/**
+	 * The symbol table of the name tree which the entity is named in
+	 * @return null if the name is detached
+	 */
+	public SymbolTable getSymbols() {
+		return qualifiedName==null?null:qualifiedName.getSymbols();
+	}
+
+	/**
+	 * The unique instance of the name in the symbol table of the entity
+	 * @return the name itself if the entity is not in a name tree
+	 */
+	protected String intern(String name) {
+		SymbolTable symbols = getSymbols();
+		return symbols==null?name:symbols.intern(name);
+	}
+
 	public int getId() {
         return id;
     }
 
+	public void setId(int id) {
+		this.id = id;
+	}
+
     public void addRelation(Relation relation) {
-        relations.add(relation);
+    	if (relations instanceof RelationStore.Relations) //relations in store are not changed
+    		relations = new ArrayList<>(relations);
+        relations = addTo(relations, relation);
     }
 
-    public ArrayList<Relation> getRelations() {
+    public List<Relation> getRelations() {
         return relations;
     }
 
+    /**
+     * Set the relations directly, used by RelationStore
+     */
+    public void setRelations(List<Relation> relations) {
+    	this.relations = relations;
+    }
+
     public void addChild(Entity child) {
-        children.add(child);
+        children = addTo(children, child);
     }
 
 	public Entity getParent() {
@@ -118,19 +180,50 @@ public abstract class Entity {
 		return children;
 	}
 	
+	/**
+	 * Set the name in the name tree of the entity, or a detached name if the entity is not in a tree
+	 */
 	public void setQualifiedName(String qualifiedName) {
+		if (qualifiedName==null) {
+			setQualifiedName((QualifiedName)null);
+			return;
+		}
+		QualifiedName name = this.qualifiedName;
+		setQualifiedName((name==null || name.isDetached())?QualifiedName.detached(qualifiedName)
+				:name.getRoot().append(qualifiedName));
+	}
+
+	public void setQualifiedName(QualifiedName qualifiedName) {
+		SymbolTable symbols = getSymbols();
 		this.qualifiedName = qualifiedName;
+		if (qualifiedName!=null && qualifiedName.getSymbols()!=symbols)
+			internRawName(rawName);
 	}
 
 	public void setRawName(String rawName) {
-		this.rawName = rawName;
+		internRawName(rawName);
 	}
 	
 	public String getQualifiedName() {
-		return qualifiedName;
+		return qualifiedName==null?null:qualifiedName.toString();
 	}
 
 	public String getQualifiedName(boolean overrideFileWithPackage) {
+		QualifiedName name = getQualifiedNameNode(overrideFileWithPackage);
+		return name==null?null:name.toString();
+	}
+
+	/**
+	 * The node of {@link #getQualifiedName()} in the name tree
+	 */
+	public QualifiedName getQualifiedNameNode() {
+		return qualifiedName;
+	}
+
+	/**
+	 * The node of {@link #getQualifiedName(boolean)} in the name tree
+	 */
+	public QualifiedName getQualifiedNameNode(boolean overrideFileWithPackage) {
 		return qualifiedName;
 	}
 
@@ -174,6 +267,37 @@ public abstract class Entity {
 		return getRawName();
 	}
 
+	/**
+	 * Release the unused capacity of collections. It is called after all files are parsed;
+	 * the collections still could be added later.
+	 */
+	public void compact() {
+		children = trimmed(children);
+		relations = trimmed(relations);
+	}
+
+	/**
+	 * Add the item into the list, the shared empty list is replaced by a new list
+	 * @return the list which contains the item
+	 */
+	static <T> List<T> addTo(List<T> list, T item) {
+		if (list==Collections.EMPTY_LIST)
+			list = new ArrayList<>();
+		list.add(item);
+		return list;
+	}
+
+	/**
+	 * @return the shared empty list if the list is empty, otherwise the list without unused capacity 
+	 */
+	static <T> List<T> trimmed(List<T> list) {
+		if (list.isEmpty())
+			return Collections.emptyList();
+		if (list instanceof ArrayList)
+			((ArrayList<T>)list).trimToSize();
+		return list;
+	}
+
 	public MultiDeclareEntities getMutliDeclare() {
 		return mutliDeclare;
 	}
@@ -25,6 +25,7 @@ SOFTWARE.
 package depends.entity;
 
 import depends.relations.Inferer;
+import depends.util.SymbolTable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -33,9 +34,13 @@ public class Expression {
 	public Integer id;
 	public Integer deduceTypeBasedId; //by default, parent expression type determined by most left child
 	public Expression parent;
-	public String text; // for debug purpose
-	public String rawType; //the raw type name
-	public String identifier; // the varName, or method name, etc.
+	public String text; // for debug purpose, only filled when debug is enabled
+	public int startIndex = -1; // the start char index of the expression in source file
+	public int stopIndex = -1; // the stop char index (inclusive) of the expression in source file
+	public String rawType; //the raw type name, set by setRawType
+	public String identifier; // the varName, or method name, etc., set by setIdentifier
+	private int rawTypeSymbol = SymbolTable.NO_SYMBOL;
+	private int identifierSymbol = SymbolTable.NO_SYMBOL;
 	public boolean isSet = false; // is a set relation from right to leftHand
 	public boolean isDot = false; // is a dot expression, will decuce variable tfype left to right
 	public boolean isCall = false;
@@ -82,10 +87,38 @@ public class Expression {
 		deducedTypeFunctions = new ArrayList<>();
 	}
 
+	/**
+	 * Set the raw type, which is interned once here, so it is resolved by symbol id
+	 * @param symbols - the symbol table of the repo which the expression belongs to
+	 */
+	public void setRawType(String rawType, SymbolTable symbols) {
+		SymbolTable.Symbol symbol = rawType==null?null:symbols.symbolOf(rawType);
+		this.rawType = symbol==null?null:symbol.name;
+		this.rawTypeSymbol = symbol==null?SymbolTable.NO_SYMBOL:symbol.id;
+	}
+
+	/**
+	 * Set the identifier, which is interned once here, so it is resolved by symbol id
+	 * @param symbols - the symbol table of the repo which the expression belongs to
+	 */
+	public void setIdentifier(String identifier, SymbolTable symbols) {
+		SymbolTable.Symbol symbol = identifier==null?null:symbols.symbolOf(identifier);
+		this.identifier = symbol==null?null:symbol.name;
+		this.identifierSymbol = symbol==null?SymbolTable.NO_SYMBOL:symbol.id;
+	}
+
+	public int getRawTypeSymbol() {
+		return rawTypeSymbol;
+	}
+
+	public int getIdentifierSymbol() {
+		return identifierSymbol;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder s = new StringBuilder();
-		s.append("[").append(text).append("]").append("|")
+		s.append("[").append(getText()).append("]").append("|")
 			.append("rawType:").append(rawType).append("|")
 			.append("identifier:").append(identifier).append("|")
 		    .append("prop:").append(isDot?"[dot]":"")
@@ -94,11 +127,20 @@ public class Expression {
 		                      .append(isCall?"[call]":"").append("|")
 		                      .append(isCreate?"[new]":"").append("|")
 		                      .append(isThrow?"[throw]":"").append("|")
-		    .append("parent:").append(parent==null?"nil":parent.text).append("|")
+		    .append("parent:").append(parent==null?"nil":parent.getText()).append("|")
 			.append("type:").append(type).append("|");
 		return s.toString();
 	}
 
+	/**
+	 * The source text of the expression if it is kept, otherwise the source interval 
+	 * @return
+	 */
+	public String getText() {
+		if (text!=null) return text;
+		return "@" + startIndex + ":" + stopIndex;
+	}
+
 	/**
 	 * deduce type of parent based on child's type
 	 * @param expressionList
@@ -111,7 +153,7 @@ public class Expression {
 		if (parent.type != null)return;
 		if (!parent.deriveTypeFromChild) return;
 		//parent's type depends on first child's type
-		if (parent.deduceTypeBasedId!=this.id) return;
+		if (!this.id.equals(parent.deduceTypeBasedId)) return;
 		
 		//if child is a built-in/external type, then parent must also a built-in/external type
 		if (this.type.equals(Inferer.buildInType)) {
@@ -159,6 +201,15 @@ public class Expression {
 			parent.referredEntity = parent.type;
 	}
 
+	/**
+	 * Set the type and referred entity directly, without deducing the types of others.
+	 * It is used to restore the resolved expressions.
+	 */
+	public void restoreType(TypeEntity type, Entity referredEntity) {
+		this.type = type;
+		this.referredEntity = referredEntity;
+	}
+
 	private void setReferredEntity(depends.entity.Entity referredEntity) {
 		this.referredEntity = referredEntity;
 	}
@@ -168,6 +219,14 @@ public class Expression {
 	}
 
 
+	public List<VarEntity> getDeducedTypeVars() {
+		return deducedTypeVars;
+	}
+
+	public List<FunctionEntity> getDeducedTypeFunctions() {
+		return deducedTypeFunctions;
+	}
+
 	public void addDeducedTypeVar(VarEntity var) {
 		this.deducedTypeVars.add(var);
 	}
@@ -28,6 +28,7 @@ import depends.importtypes.Import;
 import depends.relations.Inferer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -39,6 +40,8 @@ public class FileEntity extends ContainerEntity {
 	private List<depends.entity.Entity> importedTypes = new ArrayList<>();
 	private List<TypeEntity> declaredTypes = new ArrayList<>();
 	private ImportedFileCollector importedFileCollector = null;
+	private volatile DeclaredTypeIndex declaredTypeIndex = null;
+	private volatile ImportedSuffixIndex importedSuffixIndex = null;
 	public FileEntity(String fullName, int fileId, boolean isInProjectScope) {
 		super(fullName, null, fileId);
 		setQualifiedName(fullName);
@@ -50,6 +53,7 @@ public class FileEntity extends ContainerEntity {
 	}
 
 	public void addImport(Import imported) {
+		imported.setContent(intern(imported.getContent()));
 		importedNames.add(imported);
 	}
 	
@@ -62,31 +66,28 @@ public class FileEntity extends ContainerEntity {
 	 * @return
 	 */
 	public String importedSuffixMatch(String lastName) {
-		if (!lastName.startsWith("."))
-			lastName = "." + lastName;
-		for (depends.entity.Entity imported : this.importedTypes) {
-			String name = imported.getQualifiedName(true);
-			if (!name.startsWith("."))
-				name = "." + name;
-			if (imported.getQualifiedName(true).endsWith(lastName))
-				return imported.getQualifiedName(true);
+		String suffix = lastName.startsWith(".")?lastName.substring(1):lastName;
+		ImportedSuffixIndex index = importedSuffixIndex;
+		if (index==null || index.indexedTypes!=importedTypes || index.indexedCount!=importedTypes.size()) {
+			index = new ImportedSuffixIndex(importedTypes);
+			importedSuffixIndex = index;
 		}
-		return null;
+		return index.qualifiedNameBySuffix.get(suffix);
 	}
 	
 
 	@Override
-	public String getQualifiedName(boolean overrideFileWithPackage) {
+	public QualifiedName getQualifiedNameNode(boolean overrideFileWithPackage) {
 		if (!overrideFileWithPackage) {
-			return super.getQualifiedName();
+			return super.getQualifiedNameNode();
 		}
 		if (this.getParent() == null) {
-			return "";
+			return super.getQualifiedNameNode().getRoot();
 		}
 		if (this.getParent() instanceof PackageEntity)
-			return this.getParent().getQualifiedName();
+			return this.getParent().getQualifiedNameNode();
 		else
-			return super.getQualifiedName();
+			return super.getQualifiedNameNode();
 	}
 
 	@Override
@@ -94,6 +95,8 @@ public class FileEntity extends ContainerEntity {
 		this.importedRelationEntities = inferer.getImportedRelationEntities(importedNames);
 		this.importedTypes = inferer.getImportedTypes(importedNames);
 		this.importedFiles = inferer.getImportedFiles(importedNames);
+		this.importedSuffixIndex = new ImportedSuffixIndex(importedTypes);
+		inferer.invalidateNameCache();
 
 		super.inferLocalLevelEntities(inferer);
 	}
@@ -118,10 +121,37 @@ public class FileEntity extends ContainerEntity {
 		return importedTypes;
 	}
 
+	public List<Import> getImportedNames() {
+		return importedNames;
+	}
+
 	public List<TypeEntity> getDeclaredTypes() {
 		return this.declaredTypes;
 	}
 
+	@Override
+	public void addChild(Entity child) {
+		super.addChild(child);
+		if (getParent() instanceof PackageEntity)
+			((PackageEntity)getParent()).invalidateFileLevelEntities();
+	}
+
+	/**
+	 * Lookup the declared type by name. A type matches if its raw name or 
+	 * the last part of its qualified name is the name.
+	 * If there are many, the first declared one is returned.
+	 * @param name - a simple name
+	 * @return
+	 */
+	public TypeEntity lookupDeclaredType(String name) {
+		DeclaredTypeIndex index = declaredTypeIndex;
+		if (index==null || index.indexedCount!=declaredTypes.size()) {
+			index = new DeclaredTypeIndex(declaredTypes);
+			declaredTypeIndex = index;
+		}
+		return index.typesByName.get(name);
+	}
+
 	public void addType(TypeEntity currentTypeEntity) {
 		this.declaredTypes.add(currentTypeEntity);
 	}
@@ -133,4 +163,43 @@ public class FileEntity extends ContainerEntity {
 		return importedFileCollector.getFiles();
 	}
 
+
+	/**
+	 * Declared types by name, rebuilt if more types are declared after it is built
+	 */
+	private static class DeclaredTypeIndex {
+		final int indexedCount;
+		final HashMap<String, TypeEntity> typesByName = new HashMap<>();
+
+		DeclaredTypeIndex(List<TypeEntity> declaredTypes) {
+			indexedCount = declaredTypes.size();
+			for (TypeEntity type:declaredTypes) {
+				typesByName.putIfAbsent(type.getRawName(), type);
+				String qualifiedName = type.getQualifiedName();
+				typesByName.putIfAbsent(qualifiedName.substring(qualifiedName.lastIndexOf('.')+1), type);
+			}
+		}
+	}
+
+	/**
+	 * Qualified names of imported types by their suffixes after each '.', 
+	 * e.g. ClassX and b.ClassX of a.b.ClassX; the first imported one wins.
+	 * It is rebuilt if the imported types changed after it is built.
+	 */
+	private static class ImportedSuffixIndex {
+		final List<Entity> indexedTypes;
+		final int indexedCount;
+		final HashMap<String, String> qualifiedNameBySuffix = new HashMap<>();
+
+		ImportedSuffixIndex(List<Entity> importedTypes) {
+			indexedTypes = importedTypes;
+			indexedCount = importedTypes.size();
+			for (Entity imported:importedTypes) {
+				String qualifiedName = imported.getQualifiedName(true);
+				for (int dot = qualifiedName.indexOf('.'); dot>=0; dot = qualifiedName.indexOf('.', dot+1)) {
+					qualifiedNameBySuffix.putIfAbsent(qualifiedName.substring(dot+1), qualifiedName);
+				}
+			}
+		}
+	}
 }
@@ -36,6 +36,11 @@ public class FunctionEntity extends ContainerEntity {
     Collection<String> throwTypesIdentifiers = new ArrayList<>(); 
 	private Collection<depends.entity.TypeEntity> returnTypes = new ArrayList<>();
 	private Collection<depends.entity.TypeEntity> throwTypes = new ArrayList<>();
+	/* the qualified name with parameter types, built on demand and kept until parameters changed */
+	private String signature = null;
+	private int signatureParameterCount = -1;
+	/* the node of signature in the name tree, built on demand and cleared with the signature */
+	private QualifiedName signatureName = null;
     public FunctionEntity(String simpleName, Entity parent, Integer id, String returnType) {
 		super(simpleName, parent,id);
 		this.returnTypes = new ArrayList<>();
@@ -57,7 +62,7 @@ public class FunctionEntity extends ContainerEntity {
 
 	public void addReturnType(String returnType) {
 		if (returnType==null) return;
-		this.returnTypeIdentifiers.add(returnType);
+		this.returnTypeIdentifiers.add(intern(returnType));
 	}
 	
 	public void addReturnType(depends.entity.TypeEntity returnType) {
@@ -69,7 +74,9 @@ public class FunctionEntity extends ContainerEntity {
 	}
 
 	public void addThrowTypes(List<String> throwedType) {
-		throwTypesIdentifiers.addAll(throwedType);
+		for (String throwType:throwedType) {
+			throwTypesIdentifiers.add(intern(throwType));
+		}
 	}
 	
 	@Override
@@ -90,6 +97,14 @@ public class FunctionEntity extends ContainerEntity {
 	public Collection<depends.entity.VarEntity> getParameters() {
 		return parameters;
 	}
+	public List<String> getReturnTypeIdentifiers() {
+		return returnTypeIdentifiers;
+	}
+
+	public Collection<String> getThrowTypeIdentifiers() {
+		return throwTypesIdentifiers;
+	}
+
 	public Collection<TypeEntity> getThrowTypes() {
 		return throwTypes;
 	}
@@ -119,18 +134,38 @@ public class FunctionEntity extends ContainerEntity {
 		return super.lookupVarLocally(varName);
 	}
 
+	@Override
+	public void setQualifiedName(QualifiedName qualifiedName) {
+		super.setQualifiedName(qualifiedName);
+		signature = null;
+		signatureName = null;
+	}
+
 	@Override
 	public String getQualifiedName(){
-    	String qualifiedMethodName = qualifiedName;
-    	qualifiedMethodName += "(";
-    	for(VarEntity varEntity: parameters){
-    		qualifiedMethodName += (varEntity.getRawType()+",");
-		}
-    	if(parameters.size()>0){
-			qualifiedMethodName = qualifiedMethodName.substring(0,qualifiedMethodName.length()-1);
+		if (signature!=null && signatureParameterCount==parameters.size())
+			return signature;
+		StringBuilder qualifiedMethodName = new StringBuilder();
+		qualifiedMethodName.append(qualifiedName).append("(");
+		boolean first = true;
+		for(VarEntity varEntity: parameters){
+			if (!first)
+				qualifiedMethodName.append(",");
+			qualifiedMethodName.append(varEntity.getRawType());
+			first = false;
 		}
-		qualifiedMethodName += ")";
+		qualifiedMethodName.append(")");
+		signatureParameterCount = parameters.size();
+		signature = qualifiedMethodName.toString();
+		signatureName = null;
+		return signature;
+	}
 
-    	return qualifiedMethodName;
+	@Override
+	public QualifiedName getQualifiedNameNode() {
+		String signature = getQualifiedName();
+		if (signatureName==null && qualifiedName!=null)
+			signatureName = qualifiedName.getRoot().append(signature);
+		return signatureName;
 	}
 }
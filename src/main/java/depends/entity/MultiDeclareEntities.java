@@ -42,6 +42,13 @@ public class MultiDeclareEntities extends depends.entity.ContainerEntity {
 		add(entity);
 	}
 
+	/**
+	 * An empty multi-declaration, used to restore the entity from snapshot
+	 */
+	public MultiDeclareEntities(String rawName, int id) {
+		super(rawName, null, id);
+	}
+
 	@Override
 	public void inferLocalLevelEntities(Inferer inferer) {
 		for (depends.entity.Entity entity:entities) {
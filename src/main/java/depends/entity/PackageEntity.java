@@ -24,7 +24,12 @@ SOFTWARE.
 
 package depends.entity;
 
+import java.util.HashMap;
+
 public class PackageEntity extends TypeEntity {
+	/* the top level entities of files under the package, by raw name; built lazily */
+	private volatile HashMap<String, Entity> fileLevelEntities = null;
+
 	public PackageEntity(String rawName, Integer id) {
 		super(rawName,  null,id);
 		setQualifiedName(rawName); //in Java, package raw name = full name
@@ -33,4 +38,38 @@ public class PackageEntity extends TypeEntity {
 	public PackageEntity(String rawName, Entity currentFile, Integer id) {
 		super(rawName,  currentFile,id);
 	}
+
+	@Override
+	public void addChild(Entity child) {
+		super.addChild(child);
+		invalidateFileLevelEntities();
+	}
+
+	/**
+	 * Should be invoked when the top level entities of files under the package changed
+	 */
+	void invalidateFileLevelEntities() {
+		fileLevelEntities = null;
+	}
+
+	/**
+	 * Lookup the top level entity (e.g. class) with the name, in all files under the package.
+	 * If there are many, the first one in the order of files is returned.
+	 * @param name
+	 * @return
+	 */
+	public Entity lookupFileLevelEntity(String name) {
+		HashMap<String, Entity> index = fileLevelEntities;
+		if (index==null) {
+			index = new HashMap<>();
+			for (Entity child:getChildren()) {
+				if (!(child instanceof FileEntity)) continue;
+				for (Entity classUnderFile:child.getChildren()) {
+					index.putIfAbsent(classUnderFile.getRawName(), classUnderFile);
+				}
+			}
+			fileLevelEntities = index;
+		}
+		return index.get(name);
+	}
 }
@@ -0,0 +1,257 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.entity;
+
+import depends.util.SymbolTable;
+
+/**
+ * QualifiedName is a node of a name tree: a dotted name a.b.c is the node of 
+ * segment c under the node of a.b. Each repo owns its tree (see {@link #newTree()}), 
+ * which is shared by the entities of the repo and its staging repos. The segments and 
+ * the raw names of entities in a tree are interned by the symbol table of the tree.
+ * Each distinct dotted name has exactly one node in a tree, so the names could be compared 
+ * by identity, and the name string is only built when required.
+ * The nodes are looked up without locks; only the creation of nodes is synchronized.
+ */
+public class QualifiedName {
+	private final QualifiedName parent;
+	private final String segment;
+	private final int hash;
+	/* the symbol table of the tree; null if the node is not in any tree, see detached() */
+	private final SymbolTable symbols;
+	/* open addressing table of children; slots are filled and the table is replaced under the node lock */
+	private volatile QualifiedName[] children = null;
+	private int childCount = 0;
+	/* the dotted name, built on first use */
+	private String name = null;
+
+	private QualifiedName(QualifiedName parent, String segment, SymbolTable symbols) {
+		this.parent = parent;
+		this.segment = segment;
+		this.hash = segment.hashCode();
+		this.symbols = symbols;
+	}
+
+	/**
+	 * The root (the empty name) of a new name tree, with a new symbol table
+	 */
+	public static QualifiedName newTree() {
+		return new QualifiedName(null, "", new SymbolTable());
+	}
+
+	/**
+	 * A node of the name outside of any tree, for the entities not in a repo yet 
+	 * (e.g. file or package, which have no parent) or shared by all repos (e.g. built-in type).
+	 * The name is a single segment; it is moved into the tree of repo when the entity is added.
+	 * @param name - not null
+	 * @return a detached root if the name is empty
+	 */
+	public static QualifiedName detached(String name) {
+		QualifiedName root = new QualifiedName(null, "", null);
+		return name.isEmpty()?root:new QualifiedName(root, name, null);
+	}
+
+	/**
+	 * Whether the node is created by {@link #detached(String)}
+	 */
+	public boolean isDetached() {
+		return symbols==null;
+	}
+
+	/**
+	 * The symbol table of the tree which the node belongs to
+	 * @return null if the node is detached
+	 */
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	/**
+	 * The root of the tree which the node belongs to
+	 */
+	public QualifiedName getRoot() {
+		QualifiedName node = this;
+		while (node.parent!=null)
+			node = node.parent;
+		return node;
+	}
+
+	/**
+	 * The node of this + "." + name; name could be a dotted name.
+	 * The empty name under the root is the root itself.
+	 */
+	public QualifiedName append(String name) {
+		return append(name, 0);
+	}
+
+	/**
+	 * The node of this + "." + name starting from the given index
+	 */
+	public QualifiedName append(String name, int beginIndex) {
+		if (parent==null && beginIndex==name.length())
+			return this;
+		return walk(name, beginIndex, true);
+	}
+
+	/**
+	 * The node of this + "." + name if exists, without creating nodes
+	 * @param name - not null; could be a dotted name
+	 * @param beginIndex - the start of the name
+	 * @return null if the name never used
+	 */
+	public QualifiedName find(String name, int beginIndex) {
+		if (beginIndex==name.length())
+			return this;
+		return walk(name, beginIndex, false);
+	}
+
+	private QualifiedName walk(String name, int segmentStart, boolean create) {
+		/* the parameter list of a function signature is a part of the last segment */
+		int parameters = name.indexOf('(', segmentStart);
+		QualifiedName node = this;
+		while (true) {
+			int segmentEnd = name.indexOf('.', segmentStart);
+			if (parameters>=0 && segmentEnd>parameters)
+				segmentEnd = -1;
+			int end = segmentEnd<0?name.length():segmentEnd;
+			QualifiedName child = node.existedChild(name, segmentStart, end);
+			if (child==null) {
+				if (!create)
+					return null;
+				child = node.child(name, segmentStart, end);
+			}
+			node = child;
+			if (segmentEnd<0)
+				return node;
+			segmentStart = segmentEnd + 1;
+		}
+	}
+
+	private QualifiedName existedChild(String name, int start, int end) {
+		QualifiedName[] table = children;
+		if (table==null)
+			return null;
+		int hash = hashOf(name, start, end);
+		int mask = table.length - 1;
+		for (int i = hash & mask; ; i = (i + 1) & mask) {
+			QualifiedName node = table[i];
+			if (node==null)
+				return null;
+			if (node.matches(hash, name, start, end))
+				return node;
+		}
+	}
+
+	private synchronized QualifiedName child(String name, int start, int end) {
+		QualifiedName node = existedChild(name, start, end);
+		if (node!=null)
+			return node;
+		String segment = name.substring(start, end);
+		node = new QualifiedName(this, symbols==null?segment:symbols.intern(segment), symbols);
+		QualifiedName[] table = children;
+		if (table==null) {
+			table = new QualifiedName[4];
+		} else if ((childCount + 1) * 2 > table.length) {
+			QualifiedName[] grown = new QualifiedName[table.length * 2];
+			for (QualifiedName existed:table) {
+				if (existed!=null)
+					put(grown, existed);
+			}
+			table = grown;
+		}
+		put(table, node);
+		childCount++;
+		children = table;
+		return node;
+	}
+
+	private static void put(QualifiedName[] table, QualifiedName node) {
+		int mask = table.length - 1;
+		int i = node.hash & mask;
+		while (table[i]!=null)
+			i = (i + 1) & mask;
+		table[i] = node;
+	}
+
+	private boolean matches(int hash, String name, int start, int end) {
+		return this.hash==hash && segment.length()==end-start 
+				&& segment.regionMatches(0, name, start, end-start);
+	}
+
+	/* the same as name.substring(start, end).hashCode() */
+	private static int hashOf(String name, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + name.charAt(i);
+		return hash;
+	}
+
+	public QualifiedName getParent() {
+		return parent;
+	}
+
+	/**
+	 * The last segment of the name
+	 */
+	public String getSegment() {
+		return segment;
+	}
+
+	public boolean isEmpty() {
+		return parent==null;
+	}
+
+	/**
+	 * The dotted name
+	 */
+	@Override
+	public String toString() {
+		String name = this.name;
+		if (name==null) {
+			name = buildName();
+			this.name = name;
+		}
+		return name;
+	}
+
+	private String buildName() {
+		if (parent==null || parent.parent==null)
+			return segment;
+		int length = -1;
+		for (QualifiedName node = this; node.parent!=null; node = node.parent) {
+			length += node.segment.length() + 1;
+		}
+		char[] chars = new char[length];
+		int end = length;
+		for (QualifiedName node = this; node.parent!=null; node = node.parent) {
+			int start = end - node.segment.length();
+			node.segment.getChars(0, node.segment.length(), chars, start);
+			if (start>0)
+				chars[start-1] = '.';
+			end = start - 1;
+		}
+		return new String(chars);
+	}
+}
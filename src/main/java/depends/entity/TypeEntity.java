@@ -28,8 +28,16 @@ import depends.relations.Inferer;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 public class TypeEntity extends ContainerEntity {
+	/* changed whenever the resolved supertypes or the members of the type changed */
+	private volatile int version = 0;
+	private volatile MemberTable memberTable;
 	Collection<TypeEntity> inheritedTypes = new ArrayList<>();
 	Collection<TypeEntity> implementedTypes = new ArrayList<>();
 	Collection<String> inhertedTypeIdentifiers;
@@ -49,20 +57,46 @@ public class TypeEntity extends ContainerEntity {
 		implementedTypes.remove(this);
 		if (inheritedTypes.size()>0)
 			inheritedType = inheritedTypes.iterator().next();
+		version++;
+		inferer.invalidateNameCache();
 		super.inferLocalLevelEntities(inferer);
 	}
+	@Override
+	public void addFunction(FunctionEntity functionEntity) {
+		super.addFunction(functionEntity);
+		version++;
+	}
+	@Override
+	public void addVar(VarEntity var) {
+		super.addVar(var);
+		version++;
+	}
+	/**
+	 * The version of the type, changed whenever its resolved supertypes or members changed
+	 */
+	int getVersion() {
+		return version;
+	}
 	public void addImplements(String typeName) {
 		if (typeName.equals(this.getRawName())) return;
 		if (implementedIdentifiers.contains(typeName)) return;
 		if (typeName.equals(this.rawName)) return;
-		this.implementedIdentifiers.add(typeName);
+		this.implementedIdentifiers.add(intern(typeName));
 	}
 	public void addExtends(String typeName) {
 		if (typeName.equals(this.getRawName())) return;
 		if (inhertedTypeIdentifiers.contains(typeName)) return;
 		if (typeName.equals(this.rawName)) return;
-		this.inhertedTypeIdentifiers.add(typeName);
+		this.inhertedTypeIdentifiers.add(intern(typeName));
+	}
+	public Collection<String> getInheritedTypeIdentifiers() {
+		return inhertedTypeIdentifiers;
+	}
+
+	public Collection<String> getImplementedTypeIdentifiers() {
+		return implementedIdentifiers;
 	}
+
 	public Collection<TypeEntity> getInheritedTypes() {
 		return inheritedTypes;
 	}
@@ -74,9 +108,16 @@ public class TypeEntity extends ContainerEntity {
  	public TypeEntity getInheritedType() {
 		return inheritedType;
 	}
+
+	public void setInheritedType(TypeEntity inheritedType) {
+		this.inheritedType = inheritedType;
+	}
  	
  	@Override
  	public FunctionEntity lookupFunctionLocally(String functionName) {
+ 		MemberTable table = memberTable();
+ 		if (table!=null)
+ 			return table.functions.get(functionName);
 		FunctionEntity func = super.lookupFunctionLocally(functionName);
 		if (func!=null) return func;
 		for (TypeEntity inhertedType : getInheritedTypes()) {
@@ -95,6 +136,9 @@ public class TypeEntity extends ContainerEntity {
  	}
  	@Override
  	public depends.entity.VarEntity lookupVarLocally(String varName) {
+ 		MemberTable table = memberTable();
+ 		if (table!=null)
+ 			return table.vars.get(varName);
  		VarEntity var = super.lookupVarLocally(varName);
 		if (var!=null) return var;
 		for (TypeEntity inhertedType : getInheritedTypes()) {
@@ -115,4 +159,94 @@ public class TypeEntity extends ContainerEntity {
  	public TypeEntity getType() {
 		return this;
 	}
+
+	/**
+	 * The type and all of its supertypes in the order of member lookup: 
+	 * the type itself, then inherited types and their supertypes, then implemented types 
+	 * and their supertypes (depth first). Each type appears once even if the hierarchy has cycles.
+	 * @return
+	 */
+	public List<TypeEntity> getLinearizedTypes() {
+		MemberTable table = memberTable();
+		if (table!=null)
+			return table.linearizedTypes;
+		List<TypeEntity> linearizedTypes = new ArrayList<>();
+		linearize(this, Collections.newSetFromMap(new IdentityHashMap<>()), linearizedTypes);
+		return Collections.unmodifiableList(linearizedTypes);
+	}
+
+	private static void linearize(TypeEntity type, Set<TypeEntity> visited, List<TypeEntity> linearizedTypes) {
+		if (!visited.add(type)) return;
+		linearizedTypes.add(type);
+		for (TypeEntity inheritedType:type.getInheritedTypes()) {
+			linearize(inheritedType, visited, linearizedTypes);
+		}
+		for (TypeEntity implementedType:type.getImplementedTypes()) {
+			linearize(implementedType, visited, linearizedTypes);
+		}
+	}
+
+	/**
+	 * The member table of the type, or null if members should be looked up type by type: 
+	 * the type has no supertypes, or some types override the lookup (e.g. candidate types).
+	 * The table is built on first lookup, and built again only if the type or one of its 
+	 * supertypes changed after that.
+	 */
+	private MemberTable memberTable() {
+		if (!hasPlainLookup(this) || (inheritedTypes.isEmpty() && implementedTypes.isEmpty()))
+			return null;
+		MemberTable table = memberTable;
+		if (table!=null && table.isCurrent())
+			return table;
+		List<TypeEntity> linearizedTypes = new ArrayList<>();
+		linearize(this, Collections.newSetFromMap(new IdentityHashMap<>()), linearizedTypes);
+		for (TypeEntity type:linearizedTypes) {
+			if (!hasPlainLookup(type))
+				return null;
+		}
+		table = new MemberTable(linearizedTypes);
+		memberTable = table;
+		return table;
+	}
+
+	private static boolean hasPlainLookup(TypeEntity type) {
+		return type.getClass()==TypeEntity.class || type.getClass()==PackageEntity.class;
+	}
+
+	/**
+	 * Members of a type and its supertypes by name, like a vtable. 
+	 * For each name, the first member in the linearized types wins.
+	 * The table keeps the versions of the linearized types it is built from.
+	 */
+	private static class MemberTable {
+		final List<TypeEntity> linearizedTypes;
+		final int[] versions;
+		final HashMap<String, FunctionEntity> functions = new HashMap<>();
+		final HashMap<String, VarEntity> vars = new HashMap<>();
+
+		MemberTable(List<TypeEntity> linearizedTypes) {
+			this.linearizedTypes = Collections.unmodifiableList(linearizedTypes);
+			this.versions = new int[linearizedTypes.size()];
+			for (int i=0;i<versions.length;i++) {
+				versions[i] = linearizedTypes.get(i).getVersion();
+			}
+			for (TypeEntity type:linearizedTypes) {
+				for (FunctionEntity function:type.getFunctions()) {
+					functions.putIfAbsent(function.getRawName(), function);
+				}
+				for (VarEntity var:type.getVars()) {
+					vars.putIfAbsent(var.getRawName(), var);
+				}
+			}
+		}
+
+		/* a change of supertypes of any type in the hierarchy also changes the type's version */
+		boolean isCurrent() {
+			for (int i=0;i<versions.length;i++) {
+				if (linearizedTypes.get(i).getVersion()!=versions[i])
+					return false;
+			}
+			return true;
+		}
+	}
 }
@@ -26,22 +26,21 @@ package depends.entity;
 
 import depends.relations.Inferer;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class VarEntity extends ContainerEntity {
 	private String rawType;
 	private TypeEntity type;
-	private List<FunctionCall> functionCalls;
+	private List<FunctionCall> functionCalls = Collections.emptyList();
 	
 	public VarEntity(String simpleName, String rawType, depends.entity.Entity parent, int id) {
 		super(simpleName,  parent,id);
-		this.rawType = rawType;
-		functionCalls = new ArrayList<>();
+		this.rawType = intern(rawType);
 	}
 
 	public void setRawType(String rawType) {
-		this.rawType =rawType;
+		this.rawType = intern(rawType);
 	}
 	
 	public String getRawType() {
@@ -78,7 +77,13 @@ public class VarEntity extends ContainerEntity {
 	}
 
 	public void addFunctionCall(String fname) {
-		this.functionCalls.add(new FunctionCall(fname));
+		this.functionCalls = addTo(this.functionCalls, new FunctionCall(intern(fname)));
+	}
+
+	@Override
+	public void compact() {
+		super.compact();
+		functionCalls = trimmed(functionCalls);
 	}
 
 	public void fillCandidateTypes(Inferer inferer) {
@@ -30,8 +30,11 @@ import java.util.HashSet;
 import java.util.Set;
 
 public abstract class BuiltInType {
+	private Set<String> builtInType = new HashSet<>();
+	private Set<String> builtInPrefix = new HashSet<>();
+	private Set<String> builtInMethod = new HashSet<>();
+	private volatile BuiltInTypeMatcher matcher = createMatcher();
 
-	
 	public void createBuiltInTypes() {
     	for(String prefix:getBuiltInPrefixStr()) {
     		builtInPrefix.add(prefix);
@@ -42,28 +45,46 @@ public abstract class BuiltInType {
     	for (String method:getBuiltInMethods()) {
     		builtInMethod.add(method);
     	}
+    	matcher = createMatcher();
 	}
 	
 	public abstract String[] getBuiltInMethods();
 	public abstract String[] getBuiltInTypeStr();
 	public abstract String[] getBuiltInPrefixStr() ;
 
-	private Set<String> builtInType = new HashSet<>();
-	private Set<String> builtInPrefix = new HashSet<>();
-	private Set<String> builtInMethod = new HashSet<>();
+	/**
+	 * Add more prefixes of built-in types, for example, the packages of internal frameworks
+	 * @param prefixes
+	 */
+	public synchronized void addBuiltInPrefixes(String... prefixes) {
+		for (String prefix:prefixes) {
+			builtInPrefix.add(prefix);
+		}
+		matcher = createMatcher();
+	}
+
+	private BuiltInTypeMatcher createMatcher() {
+		Set<String> types = new HashSet<>(builtInType);
+		types.add(Inferer.buildInType.getRawName());
+		return new BuiltInTypeMatcher(types, builtInPrefix);
+	}
 
 	public boolean isBuiltInType(String type) {
-		if (Inferer.buildInType.getRawName().equals(type)) return true;
-		return builtInType.contains(type); 
+		return matcher.isType(type);
 	}
 
 	public boolean isBuiltInTypePrefix(String type) {
-		for (String prefix:builtInPrefix) {
-			if (type.startsWith(prefix)) return true;
-		}
-		return false;
+		return matcher.hasPrefix(type);
+	}
+
+	/**
+	 * Whether the type is a built-in type, or starts with a built-in prefix
+	 * @param type
+	 * @return
+	 */
+	public boolean isBuiltInTypeOrPrefix(String type) {
+		return matcher.matches(type);
 	}
-	
 
 	public boolean isBuildInMethod(String name) {
 		return builtInMethod.contains(name); 
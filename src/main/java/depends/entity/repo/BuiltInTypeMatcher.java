@@ -0,0 +1,130 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.entity.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * An immutable char trie of built-in type names and prefixes.
+ * It tells whether a name is a built-in type, starts with a built-in prefix, or either of them,
+ * in one pass over the name without allocation.
+ */
+class BuiltInTypeMatcher {
+	/* children of each node: labels are sorted chars, next are the child nodes */
+	private final char[][] labels;
+	private final int[][] next;
+	private final boolean[] isType;
+	private final boolean[] isPrefix;
+
+	BuiltInTypeMatcher(Collection<String> types, Collection<String> prefixes) {
+		List<TreeMap<Character, Integer>> children = new ArrayList<>();
+		children.add(new TreeMap<>());
+		List<Boolean> typeNodes = new ArrayList<>();
+		List<Boolean> prefixNodes = new ArrayList<>();
+		typeNodes.add(false);
+		prefixNodes.add(false);
+		for (String type : types) {
+			typeNodes.set(insert(type, children, typeNodes, prefixNodes), true);
+		}
+		for (String prefix : prefixes) {
+			prefixNodes.set(insert(prefix, children, typeNodes, prefixNodes), true);
+		}
+		int size = children.size();
+		labels = new char[size][];
+		next = new int[size][];
+		isType = new boolean[size];
+		isPrefix = new boolean[size];
+		for (int node = 0; node < size; node++) {
+			TreeMap<Character, Integer> nodeChildren = children.get(node);
+			labels[node] = new char[nodeChildren.size()];
+			next[node] = new int[nodeChildren.size()];
+			int i = 0;
+			for (Character label : nodeChildren.keySet()) {
+				labels[node][i] = label;
+				next[node][i] = nodeChildren.get(label);
+				i++;
+			}
+			isType[node] = typeNodes.get(node);
+			isPrefix[node] = prefixNodes.get(node);
+		}
+	}
+
+	private static int insert(String name, List<TreeMap<Character, Integer>> children, 
+			List<Boolean> typeNodes, List<Boolean> prefixNodes) {
+		int node = 0;
+		for (int i = 0; i < name.length(); i++) {
+			Integer child = children.get(node).get(name.charAt(i));
+			if (child == null) {
+				child = children.size();
+				children.add(new TreeMap<>());
+				typeNodes.add(false);
+				prefixNodes.add(false);
+				children.get(node).put(name.charAt(i), child);
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	private int child(int node, char c) {
+		int i = Arrays.binarySearch(labels[node], c);
+		return i < 0 ? -1 : next[node][i];
+	}
+
+	boolean isType(String name) {
+		int node = 0;
+		for (int i = 0; i < name.length() && node >= 0; i++) {
+			node = child(node, name.charAt(i));
+		}
+		return node >= 0 && isType[node];
+	}
+
+	boolean hasPrefix(String name) {
+		int node = 0;
+		for (int i = 0; i < name.length(); i++) {
+			if (isPrefix[node]) return true;
+			node = child(node, name.charAt(i));
+			if (node < 0) return false;
+		}
+		return isPrefix[node];
+	}
+
+	/**
+	 * @return whether the name is a type or starts with a prefix
+	 */
+	boolean matches(String name) {
+		int node = 0;
+		for (int i = 0; i < name.length(); i++) {
+			if (isPrefix[node]) return true;
+			node = child(node, name.charAt(i));
+			if (node < 0) return false;
+		}
+		return isPrefix[node] || isType[node];
+	}
+}
@@ -0,0 +1,651 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.entity.repo;
+
+import depends.entity.CandidateTypes;
+import depends.entity.ContainerEntity;
+import depends.entity.Entity;
+import depends.entity.Expression;
+import depends.entity.FileEntity;
+import depends.entity.FunctionCall;
+import depends.entity.FunctionEntity;
+import depends.entity.MultiDeclareEntities;
+import depends.entity.PackageEntity;
+import depends.entity.QualifiedName;
+import depends.entity.TypeEntity;
+import depends.entity.VarEntity;
+import depends.importtypes.ExactMatchImport;
+import depends.importtypes.Import;
+import depends.relations.Inferer;
+import depends.relations.Relation;
+import depends.relations.RelationStore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * EntityCodec writes entities and expressions into a binary stream, and reads them back.
+ * Each of them is written as a record with a slot number; references between them 
+ * are written as slot numbers, and restored after all records are read.
+ * The data filled by parsers are always written; the resolved data (types, relations etc.) 
+ * are only written if required.
+ * Strings and qualified names are written once: the first occurrence is written in place
+ * and added into the table of the codec, and the later ones are written as the index in table.
+ * So the same codec should be used to write (and read) all records of a stream, in the same order.
+ */
+class EntityCodec {
+	private static final byte END = 0;
+	private static final byte FILE = 1;
+	private static final byte PACKAGE = 2;
+	private static final byte TYPE = 3;
+	private static final byte FUNCTION = 4;
+	private static final byte VAR = 5;
+	private static final byte EXPRESSION = 6;
+	private static final byte MULTI_DECLARE = 7;
+	private static final byte CANDIDATE_TYPES = 8;
+
+	private static final int NULL = -1;
+	private static final int BUILT_IN_TYPE = -2;
+	private static final int EXTERNAL_TYPE = -3;
+	private static final int GENERIC_PARAMETER_TYPE = -4;
+	/* a string or name written in place, which follows the code */
+	private static final int NEW_ITEM = -5;
+	private static final int ROOT_NAME = -6;
+
+	private boolean withResolvedData;
+	private ToIntFunction<Object> slotOf;
+	/* the root of the name tree which the names are read into */
+	private QualifiedName nameRoot;
+	private Object[] slots = new Object[0];
+	private List<Runnable> linkers = new ArrayList<>();
+	/* the relations read, which are built into store after linked */
+	private RelationStore.Builder relationStore = null;
+	/* tables of strings and names written or read */
+	private HashMap<String, Integer> stringIndex = new HashMap<>();
+	private List<String> strings = new ArrayList<>();
+	private IdentityHashMap<QualifiedName, Integer> nameIndex = new IdentityHashMap<>();
+	private List<QualifiedName> names = new ArrayList<>();
+
+	/**
+	 * Create a codec for reading
+	 * @param nameRoot - the root of the name tree which the names are read into
+	 */
+	EntityCodec(QualifiedName nameRoot, boolean withResolvedData) {
+		this.nameRoot = nameRoot;
+		this.withResolvedData = withResolvedData;
+	}
+
+	/**
+	 * Create a codec for writing
+	 * @param slotOf - the slot of a referenced entity or expression, or a negative value if it is unknown
+	 */
+	EntityCodec(ToIntFunction<Object> slotOf, boolean withResolvedData) {
+		this.slotOf = slotOf;
+		this.withResolvedData = withResolvedData;
+	}
+
+	void writeEnd(DataOutput out) throws IOException {
+		out.writeByte(END);
+	}
+
+	void write(DataOutput out, Object item) throws IOException {
+		if (item instanceof Expression) {
+			writeExpression(out, (Expression) item);
+			return;
+		}
+		Entity entity = (Entity) item;
+		Class<?> c = entity.getClass();
+		byte kind;
+		if (c == FileEntity.class) kind = FILE;
+		else if (c == PackageEntity.class) kind = PACKAGE;
+		else if (c == TypeEntity.class) kind = TYPE;
+		else if (c == FunctionEntity.class) kind = FUNCTION;
+		else if (c == VarEntity.class) kind = VAR;
+		else if (c == MultiDeclareEntities.class) kind = MULTI_DECLARE;
+		else if (c == CandidateTypes.class) kind = CANDIDATE_TYPES;
+		else throw new IOException("unsupported entity type " + c.getSimpleName());
+		if (!withResolvedData && (entity.getRelations().size() > 0 || kind == MULTI_DECLARE || kind == CANDIDATE_TYPES))
+			throw new IOException("resolved entity " + entity.getRawName());
+		out.writeByte(kind);
+		out.writeInt(refOf(entity));
+		if (kind == CANDIDATE_TYPES) {
+			writeRefs(out, ((CandidateTypes) entity).getCandidateTypes());
+			return;
+		}
+		out.writeInt(entity.getId());
+		writeString(out, entity.getRawName());
+		writeName(out, entity.getQualifiedNameNode(false));
+		out.writeInt(refOf(entity.getParent()));
+		/* children of multi-declaration are the children of its entities */
+		writeRefs(out, kind == MULTI_DECLARE ? Collections.emptyList() : entity.getChildren());
+
+		ContainerEntity container = (ContainerEntity) entity;
+		writeStrings(out, container.getTypeParameters());
+		writeStrings(out, container.getAnnotations());
+		writeStrings(out, container.getMixins());
+		writeRefs(out, container.getVars());
+		writeRefs(out, container.getFunctions());
+		writeRefs(out, container.expressions());
+
+		switch (kind) {
+		case FILE:
+			FileEntity file = (FileEntity) entity;
+			out.writeBoolean(file.isInProjectScope());
+			out.writeInt(file.getImportedNames().size());
+			for (Import imported : file.getImportedNames()) {
+				if (imported.getClass() != ExactMatchImport.class)
+					throw new IOException("unsupported import type " + imported.getClass().getSimpleName());
+				writeString(out, imported.getContent());
+			}
+			writeRefs(out, file.getDeclaredTypes());
+			break;
+		case PACKAGE:
+		case TYPE:
+			TypeEntity type = (TypeEntity) entity;
+			writeStrings(out, type.getInheritedTypeIdentifiers());
+			writeStrings(out, type.getImplementedTypeIdentifiers());
+			break;
+		case FUNCTION:
+			FunctionEntity function = (FunctionEntity) entity;
+			writeStrings(out, function.getReturnTypeIdentifiers());
+			writeRefs(out, function.getReturnTypes());
+			writeRefs(out, function.getParameters());
+			writeStrings(out, function.getThrowTypeIdentifiers());
+			break;
+		case VAR:
+			VarEntity var = (VarEntity) entity;
+			writeString(out, var.getRawType());
+			out.writeInt(var.getCalledFunctions().size());
+			for (FunctionCall call : var.getCalledFunctions()) {
+				writeString(out, call.getRawName());
+			}
+			break;
+		case MULTI_DECLARE:
+			writeRefs(out, ((MultiDeclareEntities) entity).getEntities());
+			break;
+		}
+		if (withResolvedData)
+			writeResolvedData(out, kind, container);
+	}
+
+	private void writeResolvedData(DataOutput out, byte kind, ContainerEntity entity) throws IOException {
+		out.writeInt(entity.getRelations().size());
+		for (Relation relation : entity.getRelations()) {
+			out.writeByte(RelationStore.typeCodeOf(relation.getType()));
+			out.writeInt(refOf(relation.getEntity()));
+		}
+		out.writeInt(refOf(entity.getMutliDeclare()));
+		writeRefs(out, entity.getResolvedTypeParameters());
+		writeRefs(out, entity.getResolvedAnnotations());
+		writeRefs(out, entity.getResolvedMixins());
+		switch (kind) {
+		case FILE:
+			FileEntity file = (FileEntity) entity;
+			writeRefs(out, file.getImportedRelationEntities());
+			writeRefs(out, file.getImportedFiles());
+			writeRefs(out, file.getImportedTypes());
+			break;
+		case PACKAGE:
+		case TYPE:
+			TypeEntity type = (TypeEntity) entity;
+			writeRefs(out, type.getInheritedTypes());
+			writeRefs(out, type.getImplementedTypes());
+			out.writeInt(refOf(type.getInheritedType()));
+			break;
+		case FUNCTION:
+			writeRefs(out, ((FunctionEntity) entity).getThrowTypes());
+			break;
+		case VAR:
+			out.writeInt(refOf(((VarEntity) entity).getType()));
+			break;
+		}
+	}
+
+	private void writeExpression(DataOutput out, Expression expression) throws IOException {
+		out.writeByte(EXPRESSION);
+		out.writeInt(refOf(expression));
+		out.writeInt(expression.id);
+		out.writeInt(expression.deduceTypeBasedId == null ? NULL : expression.deduceTypeBasedId);
+		out.writeInt(refOf(expression.parent));
+		writeString(out, expression.text);
+		out.writeInt(expression.startIndex);
+		out.writeInt(expression.stopIndex);
+		writeString(out, expression.rawType);
+		writeString(out, expression.identifier);
+		int flags = 0;
+		if (expression.isSet) flags |= 1;
+		if (expression.isDot) flags |= 1 << 1;
+		if (expression.isCall) flags |= 1 << 2;
+		if (expression.isLogic) flags |= 1 << 3;
+		if (expression.isCreate) flags |= 1 << 4;
+		if (expression.isCast) flags |= 1 << 5;
+		if (expression.isThrow) flags |= 1 << 6;
+		if (expression.isStatement) flags |= 1 << 7;
+		if (expression.deriveTypeFromChild) flags |= 1 << 8;
+		out.writeInt(flags);
+		writeRefs(out, expression.getDeducedTypeVars());
+		writeRefs(out, expression.getDeducedTypeFunctions());
+		if (withResolvedData) {
+			out.writeInt(refOf(expression.getType()));
+			out.writeInt(refOf(expression.getReferredEntity()));
+		}
+	}
+
+	/**
+	 * Read an entity or expression. The references of it are restored in {@link #link()}
+	 * @param fileFullPath - if not null, the name of file entity is replaced by it
+	 * @return the entity or expression, or null if it is the end of records
+	 */
+	Object read(DataInput in, String fileFullPath) throws IOException {
+		byte kind = in.readByte();
+		if (kind == END)
+			return null;
+		int slot = in.readInt();
+		Object item;
+		if (kind == EXPRESSION) {
+			item = readExpression(in);
+		} else if (kind == CANDIDATE_TYPES) {
+			CandidateTypes candidateTypes = new CandidateTypes(new ArrayList<>());
+			int[] types = readRefs(in);
+			linkers.add(() -> addRefs(candidateTypes.getCandidateTypes(), types));
+			item = candidateTypes;
+		} else {
+			item = readEntity(in, kind, fileFullPath);
+		}
+		if (slot >= slots.length)
+			slots = Arrays.copyOf(slots, Math.max(slot + 1, slots.length * 2));
+		if (slots[slot] != null)
+			throw new IOException("duplicated slot " + slot);
+		slots[slot] = item;
+		return item;
+	}
+
+	private Entity readEntity(DataInput in, byte kind, String fileFullPath) throws IOException {
+		int id = in.readInt();
+		String rawName = readString(in);
+		QualifiedName qualifiedName = readName(in);
+		if (kind == FILE && fileFullPath != null) {
+			rawName = fileFullPath;
+			qualifiedName = nameRoot.append(fileFullPath);
+		}
+		int parent = in.readInt();
+		int[] children = readRefs(in);
+		List<String> typeParameters = readStrings(in);
+		List<String> annotations = readStrings(in);
+		List<String> mixins = readStrings(in);
+		int[] vars = readRefs(in);
+		int[] functions = readRefs(in);
+		int[] expressions = readRefs(in);
+
+		/* entities are created without parent; the parent and children are linked later */
+		ContainerEntity entity;
+		switch (kind) {
+		case FILE:
+			FileEntity file = new FileEntity(rawName, id, in.readBoolean());
+			int importCount = in.readInt();
+			for (int i = 0; i < importCount; i++) {
+				file.addImport(new ExactMatchImport(readString(in)));
+			}
+			int[] declaredTypes = readRefs(in);
+			linkers.add(() -> addRefs(file.getDeclaredTypes(), declaredTypes));
+			entity = file;
+			break;
+		case PACKAGE:
+		case TYPE:
+			TypeEntity type = kind == PACKAGE ? new PackageEntity(rawName, id) : new TypeEntity(rawName, null, id);
+			type.getInheritedTypeIdentifiers().addAll(readStrings(in));
+			type.getImplementedTypeIdentifiers().addAll(readStrings(in));
+			entity = type;
+			break;
+		case FUNCTION:
+			FunctionEntity function = new FunctionEntity(rawName, null, id, null);
+			function.getReturnTypeIdentifiers().addAll(readStrings(in));
+			int[] returnTypes = readRefs(in);
+			int[] parameters = readRefs(in);
+			function.getThrowTypeIdentifiers().addAll(readStrings(in));
+			linkers.add(() -> {
+				addRefs(function.getReturnTypes(), returnTypes);
+				addRefs(function.getParameters(), parameters);
+			});
+			entity = function;
+			break;
+		case VAR:
+			VarEntity var = new VarEntity(rawName, readString(in), null, id);
+			int callCount = in.readInt();
+			for (int i = 0; i < callCount; i++) {
+				var.addFunctionCall(readString(in));
+			}
+			entity = var;
+			break;
+		case MULTI_DECLARE:
+			MultiDeclareEntities multiDeclare = new MultiDeclareEntities(rawName, id);
+			int[] entities = readRefs(in);
+			linkers.add(() -> addRefs(multiDeclare.getEntities(), entities));
+			entity = multiDeclare;
+			break;
+		default:
+			throw new IOException("unknown entity kind " + kind);
+		}
+		entity.setQualifiedName(qualifiedName);
+		/* the collections of entity are shared empty lists before added, so they are restored by adders */
+		entity.addTypeParameter(typeParameters);
+		annotations.forEach(entity::addAnnotation);
+		mixins.forEach(entity::addMixin);
+		linkers.add(() -> {
+			entity.setParent((Entity) objectAt(parent));
+			addRefs(entity::addChild, children);
+			addRefs(entity::addVar, vars);
+			addRefs(entity::addFunction, functions);
+			addRefs(entity::addExpression, expressions);
+		});
+		if (withResolvedData)
+			readResolvedData(in, kind, entity);
+		return entity;
+	}
+
+	private void readResolvedData(DataInput in, byte kind, ContainerEntity entity) throws IOException {
+		int relationCount = in.readInt();
+		byte[] relationTypeOf = new byte[relationCount];
+		int[] relations = new int[relationCount];
+		for (int i = 0; i < relationCount; i++) {
+			relationTypeOf[i] = in.readByte();
+			relations[i] = in.readInt();
+		}
+		if (relationStore == null)
+			relationStore = new RelationStore.Builder();
+		int multiDeclare = in.readInt();
+		int[] typeParameters = readRefs(in);
+		int[] annotations = readRefs(in);
+		int[] mixins = readRefs(in);
+		linkers.add(() -> {
+			for (int i = 0; i < relationCount; i++) {
+				relationStore.add(entity, relationTypeOf[i], (Entity) objectAt(relations[i]));
+			}
+			entity.setMutliDeclare((MultiDeclareEntities) objectAt(multiDeclare));
+			entity.restoreResolvedTypes(refsOf(typeParameters), refsOf(annotations));
+			entity.restoreResolvedMixins(refsOf(mixins));
+		});
+		switch (kind) {
+		case FILE:
+			FileEntity file = (FileEntity) entity;
+			int[] importedRelationEntities = readRefs(in);
+			int[] importedFiles = readRefs(in);
+			int[] importedTypes = readRefs(in);
+			linkers.add(() -> {
+				addRefs(file.getImportedRelationEntities(), importedRelationEntities);
+				addRefs(file.getImportedFiles(), importedFiles);
+				addRefs(file.getImportedTypes(), importedTypes);
+			});
+			break;
+		case PACKAGE:
+		case TYPE:
+			TypeEntity type = (TypeEntity) entity;
+			int[] inheritedTypes = readRefs(in);
+			int[] implementedTypes = readRefs(in);
+			int inheritedType = in.readInt();
+			linkers.add(() -> {
+				addRefs(type.getInheritedTypes(), inheritedTypes);
+				addRefs(type.getImplementedTypes(), implementedTypes);
+				type.setInheritedType((TypeEntity) objectAt(inheritedType));
+			});
+			break;
+		case FUNCTION:
+			FunctionEntity function = (FunctionEntity) entity;
+			int[] throwTypes = readRefs(in);
+			linkers.add(() -> addRefs(function.getThrowTypes(), throwTypes));
+			break;
+		case VAR:
+			VarEntity var = (VarEntity) entity;
+			int varType = in.readInt();
+			linkers.add(() -> var.setType((TypeEntity) objectAt(varType)));
+			break;
+		}
+	}
+
+	private Expression readExpression(DataInput in) throws IOException {
+		Expression expression = new Expression(in.readInt());
+		int deduceTypeBasedId = in.readInt();
+		expression.deduceTypeBasedId = deduceTypeBasedId == NULL ? null : deduceTypeBasedId;
+		int parent = in.readInt();
+		expression.text = readString(in);
+		expression.startIndex = in.readInt();
+		expression.stopIndex = in.readInt();
+		expression.setRawType(readString(in), nameRoot.getSymbols());
+		expression.setIdentifier(readString(in), nameRoot.getSymbols());
+		int flags = in.readInt();
+		expression.isSet = (flags & 1) != 0;
+		expression.isDot = (flags & 1 << 1) != 0;
+		expression.isCall = (flags & 1 << 2) != 0;
+		expression.isLogic = (flags & 1 << 3) != 0;
+		expression.isCreate = (flags & 1 << 4) != 0;
+		expression.isCast = (flags & 1 << 5) != 0;
+		expression.isThrow = (flags & 1 << 6) != 0;
+		expression.isStatement = (flags & 1 << 7) != 0;
+		expression.deriveTypeFromChild = (flags & 1 << 8) != 0;
+		int[] deducedTypeVars = readRefs(in);
+		int[] deducedTypeFunctions = readRefs(in);
+		int type = withResolvedData ? in.readInt() : NULL;
+		int referredEntity = withResolvedData ? in.readInt() : NULL;
+		linkers.add(() -> {
+			expression.parent = (Expression) objectAt(parent);
+			addRefs(expression.getDeducedTypeVars(), deducedTypeVars);
+			addRefs(expression.getDeducedTypeFunctions(), deducedTypeFunctions);
+			expression.restoreType((TypeEntity) objectAt(type), (Entity) objectAt(referredEntity));
+		});
+		return expression;
+	}
+
+	/**
+	 * Restore the references after all records are read
+	 */
+	void link() {
+		for (Runnable linker : linkers) {
+			linker.run();
+		}
+		linkers.clear();
+	}
+
+	/**
+	 * Build the relations read into a relation store. It should be called after linked.
+	 * @return null if no resolved data read
+	 */
+	RelationStore buildRelationStore() {
+		return relationStore == null ? null : relationStore.build();
+	}
+
+	/**
+	 * The entity or expression read in the slot
+	 */
+	Object objectAt(int slot) {
+		switch (slot) {
+		case NULL:
+			return null;
+		case BUILT_IN_TYPE:
+			return Inferer.buildInType;
+		case EXTERNAL_TYPE:
+			return Inferer.externalType;
+		case GENERIC_PARAMETER_TYPE:
+			return Inferer.genericParameterType;
+		}
+		return slots[slot];
+	}
+
+	private int refOf(Object item) throws IOException {
+		if (item == null) return NULL;
+		if (item == Inferer.buildInType) return BUILT_IN_TYPE;
+		if (item == Inferer.externalType) return EXTERNAL_TYPE;
+		if (item == Inferer.genericParameterType) return GENERIC_PARAMETER_TYPE;
+		int slot = slotOf.applyAsInt(item);
+		if (slot < 0)
+			throw new IOException("unknown reference to " + item);
+		return slot;
+	}
+
+	private void writeRefs(DataOutput out, Collection<?> items) throws IOException {
+		out.writeInt(items.size());
+		for (Object item : items) {
+			out.writeInt(refOf(item));
+		}
+	}
+
+	private int[] readRefs(DataInput in) throws IOException {
+		int[] refs = new int[in.readInt()];
+		for (int i = 0; i < refs.length; i++) {
+			refs[i] = in.readInt();
+		}
+		return refs;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> void addRefs(Collection<T> items, int[] refs) {
+		for (int ref : refs) {
+			items.add((T) objectAt(ref));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> void addRefs(Consumer<T> adder, int[] refs) {
+		for (int ref : refs) {
+			adder.accept((T) objectAt(ref));
+		}
+	}
+
+	private <T> List<T> refsOf(int[] refs) {
+		List<T> items = new ArrayList<>(refs.length);
+		addRefs(items, refs);
+		return items;
+	}
+
+	private void writeStrings(DataOutput out, Collection<String> values) throws IOException {
+		out.writeInt(values.size());
+		for (String value : values) {
+			writeString(out, value);
+		}
+	}
+
+	private List<String> readStrings(DataInput in) throws IOException {
+		int size = in.readInt();
+		List<String> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(NULL);
+			return;
+		}
+		Integer index = stringIndex.get(value);
+		if (index != null) {
+			out.writeInt(index);
+			return;
+		}
+		out.writeInt(NEW_ITEM);
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		stringIndex.put(value, strings.size());
+		strings.add(value);
+	}
+
+	/**
+	 * Read a string written by {@link #writeString(DataOutput, String)}; the strings are interned
+	 */
+	String readString(DataInput in) throws IOException {
+		int index = in.readInt();
+		if (index == NULL) return null;
+		if (index != NEW_ITEM)
+			return stringAt(index);
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		String value = nameRoot.getSymbols().intern(new String(bytes, StandardCharsets.UTF_8));
+		strings.add(value);
+		return value;
+	}
+
+	private String stringAt(int index) throws IOException {
+		if (index < 0 || index >= strings.size())
+			throw new IOException("unknown string " + index);
+		return strings.get(index);
+	}
+
+	/**
+	 * Write the qualified name as its parent name and its last segment
+	 */
+	void writeName(DataOutput out, QualifiedName name) throws IOException {
+		if (name == null) {
+			out.writeInt(NULL);
+			return;
+		}
+		if (name.isEmpty()) {
+			out.writeInt(ROOT_NAME);
+			return;
+		}
+		Integer index = nameIndex.get(name);
+		if (index != null) {
+			out.writeInt(index);
+			return;
+		}
+		out.writeInt(NEW_ITEM);
+		writeName(out, name.getParent());
+		writeString(out, name.getSegment());
+		nameIndex.put(name, names.size());
+		names.add(name);
+	}
+
+	/**
+	 * Read a name written by {@link #writeName(DataOutput, QualifiedName)} into the name tree of the codec
+	 */
+	QualifiedName readName(DataInput in) throws IOException {
+		int index = in.readInt();
+		switch (index) {
+		case NULL:
+			return null;
+		case ROOT_NAME:
+			return nameRoot;
+		case NEW_ITEM:
+			QualifiedName parent = readName(in);
+			QualifiedName name = parent.append(readString(in));
+			names.add(name);
+			return name;
+		}
+		if (index < 0 || index >= names.size())
+			throw new IOException("unknown name " + index);
+		return names.get(index);
+	}
+}
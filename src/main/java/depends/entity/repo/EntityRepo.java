@@ -26,36 +26,93 @@ package depends.entity.repo;
 
 import depends.entity.Entity;
 import depends.entity.MultiDeclareEntities;
+import depends.entity.QualifiedName;
+import depends.relations.RelationStore;
+import depends.util.SymbolTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public class EntityRepo extends IdGenerator {
-	private HashMap<String, Entity> allEntieisByName = new HashMap<>();
-	private HashMap<Integer, Entity> allEntitiesById = new HashMap<>();
+	/* the names are nodes of the name tree of repo, which are compared by identity */
+	private HashMap<QualifiedName, Entity> allEntieisByName = new HashMap<>();
+	/* the root of the name tree which the entities of the repo are created in */
+	private final QualifiedName nameRoot;
+	/* ids are dense sequential numbers, so entities are indexed by id directly */
+	private Entity[] allEntitiesById = new Entity[1024];
 	private List<Entity> allEntitiesByOrder = new ArrayList<>();
 	public static final String GLOBAL_SCOPE_NAME = "::GLOBAL::";
+	private RelationStore relationStore = null;
 
 	public EntityRepo() {
+		this(QualifiedName.newTree());
+	}
+
+	/**
+	 * A repo of which entities are named in the given name tree, 
+	 * e.g. the tree of the repo which it is merged into
+	 * @param nameRoot - the root of the name tree
+	 */
+	public EntityRepo(QualifiedName nameRoot) {
+		this.nameRoot = nameRoot;
+	}
+
+	/**
+	 * The root of the name tree of the repo
+	 */
+	public QualifiedName getNameRoot() {
+		return nameRoot;
+	}
+
+	/**
+	 * The symbol table of the name tree of the repo
+	 */
+	public SymbolTable getSymbols() {
+		return nameRoot.getSymbols();
 	}
 	
 	public Entity getEntity(String entityName) {
+		QualifiedName name = nameRoot.find(entityName, 0);
+		if (name==null) return null;
+		return getEntity(name);
+	}
+
+	public Entity getEntity(QualifiedName entityName) {
 		return allEntieisByName.get(entityName);
 	}
 	
-	public Entity getEntity(Integer entityId) {
-		return allEntitiesById.get(entityId);
+	public Entity getEntity(int entityId) {
+		if (entityId<0 || entityId>=allEntitiesById.length) return null;
+		return allEntitiesById[entityId];
+	}
+
+	private void putEntityById(Entity entity) {
+		int id = entity.getId();
+		if (id<0) return;
+		if (id>=allEntitiesById.length)
+			allEntitiesById = Arrays.copyOf(allEntitiesById, Math.max(id+1, allEntitiesById.length*2));
+		allEntitiesById[id] = entity;
 	}
 	
 	public void add(Entity entity) {
+		entity.moveToNameTree(nameRoot);
+		add(entity, nameOf(entity));
+	}
+
+	/**
+	 * Add the entity with the given name 
+	 * @param entity
+	 * @param name - the name used to register the entity
+	 */
+	protected void add(Entity entity, QualifiedName name) {
 		allEntitiesByOrder.add(entity);
-		allEntitiesById.put(entity.getId(), entity);
-		String name = entity.getRawName();
-		if (entity.getQualifiedName()!=null && !(entity.getQualifiedName().isEmpty()) ) {
-			name = entity.getQualifiedName();
-		}
+		putEntityById(entity);
 		if (allEntieisByName.containsKey(name)) {
 			Entity existedEntity = allEntieisByName.get(name);
 			if (existedEntity instanceof MultiDeclareEntities) {
@@ -72,10 +129,67 @@ public class EntityRepo extends IdGenerator {
 			this.setParent(entity, entity.getParent());
 	}
 		
+	/**
+	 * The name used to register the entity: qualified name if exists, otherwise raw name
+	 */
+	protected QualifiedName nameOf(Entity entity) {
+		QualifiedName name = entity.getQualifiedNameNode();
+		if (name!=null && !(name.isEmpty()) ) {
+			return name;
+		}
+		return nameRoot.append(entity.getRawName());
+	}
+
 	public Collection<Entity> getEntities() {
 		return allEntitiesByOrder;
 	}
+
+	/**
+	 * The registered names of entities, used by snapshot
+	 */
+	HashMap<QualifiedName, Entity> getEntitiesByName() {
+		return allEntieisByName;
+	}
+
+	/**
+	 * Restore the registered entities directly, used by snapshot
+	 */
+	void restore(List<Entity> entitiesByOrder, HashMap<QualifiedName, Entity> entitiesByName) {
+		allEntitiesByOrder = entitiesByOrder;
+		allEntieisByName = entitiesByName;
+		allEntitiesById = new Entity[Math.max(getNextAvaliableIndex(), 1)];
+		for (Entity entity:entitiesByOrder) {
+			putEntityById(entity);
+		}
+	}
 	
+	/**
+	 * The relations of all entities, which is built after bindings resolved
+	 * @return null if the relations are not computed yet
+	 */
+	public RelationStore getRelationStore() {
+		return relationStore;
+	}
+
+	public void setRelationStore(RelationStore relationStore) {
+		this.relationStore = relationStore;
+	}
+
+	/**
+	 * Release the unused capacity of collections of all entities, including the entities 
+	 * not registered (e.g. vars). It should be called when no more entities will be added.
+	 */
+	public void compact() {
+		Set<Entity> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<Entity> stack = new ArrayList<>(allEntitiesByOrder);
+		while (!stack.isEmpty()) {
+			Entity entity = stack.remove(stack.size()-1);
+			if (!visited.add(entity)) continue;
+			entity.compact();
+			stack.addAll(entity.getChildren());
+		}
+	}
+
 	public void setParent(Entity child, Entity parent) {
 		if (parent==null) return;
 		if (child==null) return;
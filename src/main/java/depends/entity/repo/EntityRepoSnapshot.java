@@ -0,0 +1,211 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.entity.repo;
+
+import depends.entity.ContainerEntity;
+import depends.entity.Entity;
+import depends.entity.Expression;
+import depends.entity.MultiDeclareEntities;
+import depends.entity.QualifiedName;
+import depends.util.ByteBufferDataInput;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EntityRepoSnapshot saves a resolved entity repo (entities, expressions, resolved types 
+ * and relations) into a binary file, and restores the repo without parsing and resolving again.
+ * The snapshot is written as a stream of records, and read back through a memory-mapped buffer.
+ */
+public class EntityRepoSnapshot {
+	private static final int MAGIC = 0x44505353; // "DPSS"
+	private static final int FORMAT_VERSION = 2;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Write the snapshot of the repo. It should be called after all bindings are resolved.
+	 * @param repo
+	 * @param fileName - the snapshot file
+	 */
+	public static void write(EntityRepo repo, String fileName) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE))) {
+			new SnapshotWriter(repo).write(out);
+		}
+	}
+
+	/**
+	 * Restore the repo from snapshot file
+	 * @param fileName - the snapshot file
+	 * @return the restored repo
+	 */
+	public static EntityRepo read(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			/* a mapped buffer could not be larger than 2G */
+			if (size <= Integer.MAX_VALUE)
+				return read(new ByteBufferDataInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)));
+			return read(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE)));
+		}
+	}
+
+	private static EntityRepo read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("not a snapshot file");
+		int version = in.readInt();
+		if (version != FORMAT_VERSION)
+			throw new IOException("unsupported snapshot version " + version);
+		EntityRepo repo = new EntityRepo();
+		repo.setNextAvaliableIndex(in.readInt());
+		EntityCodec codec = new EntityCodec(repo.getNameRoot(), true);
+		while (codec.read(in, null) != null)
+			;
+		codec.link();
+
+		int entityCount = in.readInt();
+		List<Entity> entitiesByOrder = new ArrayList<>(entityCount);
+		for (int i = 0; i < entityCount; i++) {
+			entitiesByOrder.add((Entity) codec.objectAt(in.readInt()));
+		}
+		int nameCount = in.readInt();
+		HashMap<QualifiedName, Entity> entitiesByName = new HashMap<>(nameCount * 4 / 3 + 1);
+		for (int i = 0; i < nameCount; i++) {
+			QualifiedName name = codec.readName(in);
+			entitiesByName.put(name, (Entity) codec.objectAt(in.readInt()));
+		}
+		repo.restore(entitiesByOrder, entitiesByName);
+		repo.setRelationStore(codec.buildRelationStore());
+		repo.compact();
+		return repo;
+	}
+
+	/**
+	 * Each entity or expression is written into its own slot. The slot is its id if possible;
+	 * the others (without id, like candidate types) are put into slots after all ids.
+	 */
+	private static class SnapshotWriter {
+		private EntityRepo repo;
+		private IdentityHashMap<Object, Integer> slots = new IdentityHashMap<>();
+		private List<Object> pending = new ArrayList<>();
+		private BitSet usedIds = new BitSet();
+		private int nextExtraSlot;
+		private boolean closed = false;
+
+		SnapshotWriter(EntityRepo repo) {
+			this.repo = repo;
+			this.nextExtraSlot = repo.getNextAvaliableIndex();
+		}
+
+		void write(DataOutput out) throws IOException {
+			for (Entity entity : repo.getEntities()) {
+				collect(entity);
+			}
+			for (Entity entity : repo.getEntitiesByName().values()) {
+				collect(entity);
+			}
+
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(repo.getNextAvaliableIndex());
+			EntityCodec codec = new EntityCodec(this::slotOf, true);
+			/* records referred but not collected are appended to pending list during writing */
+			for (int i = 0; i < pending.size(); i++) {
+				codec.write(out, pending.get(i));
+			}
+			codec.writeEnd(out);
+			closed = true;
+
+			out.writeInt(repo.getEntities().size());
+			for (Entity entity : repo.getEntities()) {
+				out.writeInt(slots.get(entity));
+			}
+			out.writeInt(repo.getEntitiesByName().size());
+			for (Map.Entry<QualifiedName, Entity> entry : repo.getEntitiesByName().entrySet()) {
+				codec.writeName(out, entry.getKey());
+				out.writeInt(slots.get(entry.getValue()));
+			}
+		}
+
+		private void collect(Entity entity) {
+			if (slots.containsKey(entity))
+				return;
+			assign(entity);
+			if (entity instanceof ContainerEntity) {
+				for (Expression expression : ((ContainerEntity) entity).expressions()) {
+					assign(expression);
+				}
+			}
+			if (entity instanceof MultiDeclareEntities) {
+				for (Entity declared : ((MultiDeclareEntities) entity).getEntities()) {
+					collect(declared);
+				}
+			} else {
+				for (Entity child : entity.getChildren()) {
+					collect(child);
+				}
+			}
+			if (entity.getMutliDeclare() != null)
+				collect(entity.getMutliDeclare());
+		}
+
+		private int assign(Object item) {
+			int id = (item instanceof Expression) ? ((Expression) item).id : ((Entity) item).getId();
+			int slot;
+			if (id >= 0 && !usedIds.get(id)) {
+				usedIds.set(id);
+				slot = id;
+			} else {
+				slot = nextExtraSlot++;
+			}
+			slots.put(item, slot);
+			pending.add(item);
+			return slot;
+		}
+
+		private int slotOf(Object item) {
+			Integer slot = slots.get(item);
+			if (slot != null)
+				return slot;
+			if (closed)
+				return -1;
+			return assign(item);
+		}
+	}
+}
@@ -36,4 +36,12 @@ public class IdGenerator {
 	public Integer generateId() {
 		return nextAvaliableIndex++;
 	}
+
+	int getNextAvaliableIndex() {
+		return nextAvaliableIndex;
+	}
+
+	void setNextAvaliableIndex(int nextAvaliableIndex) {
+		this.nextAvaliableIndex = nextAvaliableIndex;
+	}
 }
@@ -0,0 +1,274 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.entity.repo;
+
+import depends.entity.ContainerEntity;
+import depends.entity.Entity;
+import depends.entity.Expression;
+import depends.entity.FileEntity;
+import depends.entity.QualifiedName;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * StagingEntityRepo is a private repo used by a parser thread.
+ * It records the sequence of id generation and entity registration while
+ * parsing a file, and replays the sequence into the shared repo when merged.
+ * Merging the staging repos in the same order as the files being traversed
+ * leads to exactly the same ids and entities as a single-threaded run.
+ */
+public class StagingEntityRepo extends EntityRepo {
+	/* each item is either an Integer (a generated id) or a StagedEntity (an added entity) */
+	private List<Object> journal = new ArrayList<>();
+	private List<Entity> stagedEntities = new ArrayList<>();
+	private HashMap<QualifiedName, Entity> stagedEntitiesByName = new HashMap<>();
+	private int nextLocalId = 0;
+
+	/**
+	 * @param nameRoot - the root of the name tree of the repo which the staging repo is merged into
+	 */
+	public StagingEntityRepo(QualifiedName nameRoot) {
+		super(nameRoot);
+	}
+
+	@Override
+	public Integer generateId() {
+		Integer id = nextLocalId++;
+		journal.add(id);
+		return id;
+	}
+
+	@Override
+	public Entity getEntity(QualifiedName entityName) {
+		return stagedEntitiesByName.get(entityName);
+	}
+
+	@Override
+	protected void add(Entity entity, QualifiedName name) {
+		journal.add(new StagedEntity(entity, name));
+		stagedEntities.add(entity);
+		if (!stagedEntitiesByName.containsKey(name))
+			stagedEntitiesByName.put(name, entity);
+		if (entity.getParent()!=null)
+			this.setParent(entity, entity.getParent());
+	}
+
+	@Override
+	public Collection<Entity> getEntities() {
+		return stagedEntities;
+	}
+
+	/**
+	 * Replay the staged entities into the given repo.
+	 * Top level entities (without parent) which already exist in the repo, 
+	 * like packages, are not added again; their children are moved to the existing one.
+	 * @param repo - the shared repo
+	 */
+	public void mergeInto(EntityRepo repo) {
+		IdentityHashMap<Entity, Entity> reusedEntities = new IdentityHashMap<>();
+		Set<Integer> reusedIds = new HashSet<>();
+		for (Object item:journal) {
+			if (!(item instanceof StagedEntity)) continue;
+			StagedEntity staged = (StagedEntity)item;
+			if (staged.entity.getParent()!=null) continue;
+			Entity existed = repo.getEntity(staged.name);
+			if (existed==null) continue;
+			reusedEntities.put(staged.entity, existed);
+			reusedIds.add(staged.entity.getId());
+		}
+		
+		/* collect the entities not registered in repo (e.g. vars) and expressions before merging,
+		 * because merging may add new entities (e.g. multi-declare) into the tree */
+		List<Entity> unregisteredEntities = new ArrayList<>();
+		List<Expression> expressions = new ArrayList<>();
+		Set<Entity> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		visited.addAll(stagedEntities);
+		for (Entity entity:stagedEntities) {
+			collectIdHolders(entity, visited, unregisteredEntities, expressions);
+		}
+
+		int[] mergedIds = new int[nextLocalId];
+		for (Object item:journal) {
+			if (item instanceof Integer) {
+				int localId = (Integer)item;
+				if (!reusedIds.contains(localId))
+					mergedIds[localId] = repo.generateId();
+				continue;
+			}
+			StagedEntity staged = (StagedEntity)item;
+			Entity entity = staged.entity;
+			Entity existed = reusedEntities.get(entity);
+			if (existed==null) {
+				entity.setId(mergedIds[entity.getId()]);
+				repo.add(entity, staged.name);
+				continue;
+			}
+			for (Entity child:new ArrayList<>(entity.getChildren())) {
+				repo.setParent(child, existed);
+			}
+		}
+
+		for (Entity entity:unregisteredEntities) {
+			entity.setId(mergedIds[entity.getId()]);
+		}
+		for (Expression expression:expressions) {
+			expression.id = mergedIds[expression.id];
+			if (expression.deduceTypeBasedId!=null)
+				expression.deduceTypeBasedId = mergedIds[expression.deduceTypeBasedId];
+		}
+	}
+
+	/**
+	 * Write the journal and all entities and expressions of the staging repo.
+	 * @throws IOException if the entities could not be written, e.g. entities of unsupported types
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		Object[] idHolders = new Object[nextLocalId];
+		List<Entity> entities = new ArrayList<>(stagedEntities);
+		List<Expression> expressions = new ArrayList<>();
+		Set<Entity> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		visited.addAll(stagedEntities);
+		for (Entity entity:stagedEntities) {
+			collectIdHolders(entity, visited, entities, expressions);
+		}
+		for (Entity entity:entities) {
+			putIdHolder(idHolders, entity.getId(), entity);
+		}
+		for (Expression expression:expressions) {
+			putIdHolder(idHolders, expression.id, expression);
+		}
+
+		/* the local id is used as the slot of record */
+		EntityCodec codec = new EntityCodec(item -> {
+			int id = idOf(item);
+			return (id>=0 && id<idHolders.length && idHolders[id]==item)?id:-1;
+		}, false);
+		out.writeInt(nextLocalId);
+		out.writeInt(journal.size());
+		for (Object item:journal) {
+			if (item instanceof Integer) {
+				out.writeBoolean(false);
+				continue;
+			}
+			StagedEntity staged = (StagedEntity)item;
+			out.writeBoolean(true);
+			out.writeInt(staged.entity.getId());
+			codec.writeName(out, staged.name);
+		}
+		for (Object idHolder:idHolders) {
+			if (idHolder!=null)
+				codec.write(out, idHolder);
+		}
+		codec.writeEnd(out);
+	}
+
+	private static int idOf(Object idHolder) {
+		return (idHolder instanceof Expression)?((Expression)idHolder).id:((Entity)idHolder).getId();
+	}
+
+	private static void putIdHolder(Object[] idHolders, int id, Object idHolder) throws IOException {
+		if (id<0 || id>=idHolders.length || idHolders[id]!=null)
+			throw new IOException("unexpected id " + id + " of " + idHolder);
+		idHolders[id] = idHolder;
+	}
+
+	/**
+	 * Read a staging repo written by {@link #writeTo(DataOutput)}
+	 * @param fileFullPath - the path of the parsed file, which replaces the name of the file entity
+	 * @param nameRoot - the root of the name tree which the entities are named in
+	 */
+	public static StagingEntityRepo readFrom(DataInput in, String fileFullPath, QualifiedName nameRoot) throws IOException {
+		StagingEntityRepo stagingRepo = new StagingEntityRepo(nameRoot);
+		int idCount = in.readInt();
+		Object[] idHolders = new Object[idCount];
+		int journalSize = in.readInt();
+		int[] addedIds = new int[journalSize];
+		QualifiedName[] addedNames = new QualifiedName[journalSize];
+		EntityCodec codec = new EntityCodec(nameRoot, false);
+		for (int i=0;i<journalSize;i++) {
+			addedIds[i] = -1;
+			if (!in.readBoolean()) continue;
+			addedIds[i] = in.readInt();
+			addedNames[i] = codec.readName(in);
+		}
+		Object idHolder;
+		while ((idHolder = codec.read(in, fileFullPath))!=null) {
+			putIdHolder(idHolders, idOf(idHolder), idHolder);
+		}
+		codec.link();
+
+		for (int i=0;i<journalSize;i++) {
+			if (addedIds[i]<0) {
+				stagingRepo.journal.add(stagingRepo.nextLocalId++);
+				continue;
+			}
+			Entity entity = (Entity)idHolders[addedIds[i]];
+			QualifiedName name = (entity instanceof FileEntity && fileFullPath!=null)?nameRoot.append(fileFullPath):addedNames[i];
+			stagingRepo.journal.add(new StagedEntity(entity, name));
+			stagingRepo.stagedEntities.add(entity);
+			if (!stagingRepo.stagedEntitiesByName.containsKey(name))
+				stagingRepo.stagedEntitiesByName.put(name, entity);
+		}
+		if (stagingRepo.nextLocalId!=idCount)
+			throw new IOException("inconsistent id count " + idCount);
+		return stagingRepo;
+	}
+
+	private void collectIdHolders(Entity entity, Set<Entity> visited, List<Entity> unregisteredEntities,
+			List<Expression> expressions) {
+		if (entity instanceof ContainerEntity) {
+			expressions.addAll(((ContainerEntity) entity).expressions());
+		}
+		for (Entity child:entity.getChildren()) {
+			if (visited.contains(child)) continue;
+			visited.add(child);
+			unregisteredEntities.add(child);
+			collectIdHolders(child, visited, unregisteredEntities, expressions);
+		}
+	}
+
+	/**
+	 * The entity name could be changed after added into repo 
+	 * (e.g. parameters of function), so we keep the name at that time
+	 */
+	private static class StagedEntity {
+		Entity entity;
+		QualifiedName name;
+		StagedEntity(Entity entity, QualifiedName name) {
+			this.entity = entity;
+			this.name = name;
+		}
+	}
+}
@@ -26,22 +26,35 @@ package depends.extractor;
 
 import depends.entity.repo.BuiltInType;
 import depends.entity.repo.EntityRepo;
+import depends.entity.repo.EntityRepoSnapshot;
+import depends.entity.repo.StagingEntityRepo;
+import depends.generator.DependencyGenerator;
 import depends.matrix.core.DependencyMatrix;
+import depends.matrix.transform.OrderedMatrixGenerator;
 import depends.relations.ImportLookupStrategy;
 import depends.relations.Inferer;
 import depends.util.FileTraversal;
 import depends.util.FileUtil;
 import org.codehaus.plexus.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-
-//import depends.generator.DependencyGenerator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 abstract public class AbstractLangProcessor {
+	private static final Logger logger = LoggerFactory.getLogger(AbstractLangProcessor.class);
+	/* the files parsed ahead of merging per parser thread */
+	private static final int FILES_IN_FLIGHT_PER_THREAD = 4;
 	/**
 	 * The name of the lang
 	 * @return
@@ -66,16 +79,21 @@ abstract public class AbstractLangProcessor {
 	/**
 	 * The language specific file parser
 	 * @param fileFullPath
+	 * @param entityRepo - the repo which the entities of the file are added into
+	 * @param inferer - the inferer works on the entityRepo
 	 * @return
 	 */
-    protected abstract FileParser createFileParser(String fileFullPath);
+    protected abstract FileParser createFileParser(String fileFullPath, EntityRepo entityRepo, Inferer inferer);
 
 	public Inferer inferer;
 	protected EntityRepo entityRepo;
 	DependencyMatrix dependencyMatrix;
 	private String inputSrcPath;
 	public String[] includeDirs;
-//	private DependencyGenerator dependencyGenerator;
+	private int parserThreads = 1;
+	private ParseCache parseCache = null;
+	private DependencyGenerator dependencyGenerator = null;
+	private String snapshotFile = null;
 
 	public AbstractLangProcessor(boolean eagerExpressionResolve) {
 		entityRepo = new EntityRepo();
@@ -88,18 +106,58 @@ abstract public class AbstractLangProcessor {
      * Step 1: parse all files, add entities and expression into repositories
      * Step 2: resolve bindings of files (if not resolved yet)
      * Step 3: identify dependencies 
+     * If the snapshot file is set and exists, step 1 and 2 are replaced by restoring the snapshot.
      * @param includeDir 
      * @param inputDir 
      */
 	public void buildDependencies(String inputDir, String[] includeDir) {
 		this.inputSrcPath = inputDir;
 		this.includeDirs = includeDir;
-        parseAllFiles();
-        resolveBindings();
-//        identifyDependencies();
+		if (!restoreSnapshot()) {
+	        parseAllFiles();
+	        afterAllFilesParsed();
+	        resolveBindings();
+	        saveSnapshot();
+		}
+        identifyDependencies();
+	}
+
+	/**
+	 * Restore the resolved repo from the snapshot file if exists
+	 * @return true if restored
+	 */
+	private boolean restoreSnapshot() {
+		if (snapshotFile==null || !new File(snapshotFile).isFile())
+			return false;
+		try {
+			entityRepo = EntityRepoSnapshot.read(snapshotFile);
+			inferer = inferer.withRepo(entityRepo);
+			logger.info("entities are restored from snapshot " + snapshotFile);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private void saveSnapshot() {
+		if (snapshotFile==null)
+			return;
+		try {
+			EntityRepoSnapshot.write(entityRepo, snapshotFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 
+	/**
+	 * Invoked after all files are parsed. 
+	 * Lang processors could override it to report the parsing status.
+	 */
+	protected void afterAllFilesParsed() {
+	}
+
 	/**
 	 * 
 	 * @return unsolved bindings
@@ -110,35 +168,187 @@ abstract public class AbstractLangProcessor {
         	System.err.println("The following items are unsolved." + unsolved);
     }
     
-//    private void identifyDependencies(){
-//		System.out.println("dependencie data generating...");
-//        dependencyMatrix  = dependencyGenerator.build(entityRepo);
-//        dependencyMatrix = new OrderedMatrixGenerator(dependencyMatrix).build();
-//        System.out.println("dependencie data generating done successfully...");
-//    }
+    /**
+     * Build the dependency matrix if a generator is set
+     */
+    private void identifyDependencies(){
+    	if (dependencyGenerator==null) return;
+    	logger.info("dependencie data generating...");
+        dependencyMatrix  = dependencyGenerator.build(entityRepo);
+        dependencyMatrix = new OrderedMatrixGenerator(dependencyMatrix).build();
+        logger.info("dependencie data generating done successfully...");
+    }
 
     private final void parseAllFiles() {
+    	List<String> files = new ArrayList<>();
     	FileTraversal fileTransversal = new FileTraversal(new FileTraversal.IFileVisitor(){
 			@Override
 			public void visit(File file) {
 				String fileFullPath = file.getAbsolutePath();
 				fileFullPath = FileUtil.uniqFilePath(fileFullPath);
-	            FileParser fileParser = createFileParser(fileFullPath);
-	            try {
-//	                System.out.println("parsing " + fileFullPath
-//	                		+ "...");
-	                fileParser.parse();
-	            } catch (IOException e) {
-	                e.printStackTrace();
-	            }	
+				files.add(fileFullPath);
 			}
     		
     	});
     	fileTransversal.extensionFilter(this.fileSuffixes());
 		fileTransversal.travers(this.inputSrcPath);
+		if (inferer.isEagerExpressionResolve())
+			/* eager expressions are resolved against the files parsed before, which a staging repo does not have */
+			parseFiles(files);
+		else if (parserThreads>1)
+			parseFilesInParallel(files);
+		else if (parseCache!=null)
+			parseFilesWithCache(files);
+		else
+			parseFiles(files);
+		entityRepo.compact();
+		if (parseCache!=null && !inferer.isEagerExpressionResolve())
+			logger.info(parseCache.getHitCount() + " of " + files.size() + " files are restored from parse cache");
+	}
 
+	private void parseFiles(List<String> files) {
+		for (String fileFullPath:files) {
+            FileParser fileParser = createFileParser(fileFullPath, entityRepo, inferer);
+            try {
+//                System.out.println("parsing " + fileFullPath
+//                		+ "...");
+                fileParser.parse();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+		}
+	}
+
+	private void parseFilesWithCache(List<String> files) {
+		for (String fileFullPath:files) {
+			parseIntoStagingRepo(fileFullPath).mergeInto(entityRepo);
+		}
+	}
+
+	/**
+	 * Each file is parsed into its own staging repo by the worker threads, 
+	 * and the staging repos are merged into the entity repo in the order of files,
+	 * so the result is the same as single-threaded parsing.
+	 * Only a few files per thread are parsed ahead of merging, so the staging repos 
+	 * held in memory are bounded; each one is released once merged.
+	 * @param files
+	 */
+	private void parseFilesInParallel(List<String> files) {
+		ExecutorService executor = Executors.newFixedThreadPool(parserThreads);
+		try {
+			int maxFilesInFlight = parserThreads * FILES_IN_FLIGHT_PER_THREAD;
+			ArrayDeque<Future<StagingEntityRepo>> stagingRepos = new ArrayDeque<>(maxFilesInFlight);
+			Iterator<String> pendingFiles = files.iterator();
+			while (pendingFiles.hasNext() || !stagingRepos.isEmpty()) {
+				while (pendingFiles.hasNext() && stagingRepos.size()<maxFilesInFlight) {
+					String fileFullPath = pendingFiles.next();
+					stagingRepos.add(executor.submit(()->parseIntoStagingRepo(fileFullPath)));
+				}
+				stagingRepos.poll().get().mergeInto(entityRepo);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Parse the file into a staging repo, or restore it from the parse cache if the file is unchanged
+	 * @param fileFullPath
+	 * @return
+	 */
+	private StagingEntityRepo parseIntoStagingRepo(String fileFullPath) {
+		String cacheKey = null;
+		if (parseCache!=null) {
+			try {
+				cacheKey = parseCache.keyOf(fileFullPath);
+				StagingEntityRepo cached = parseCache.load(cacheKey, fileFullPath, entityRepo.getNameRoot());
+				if (cached!=null)
+					return cached;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		StagingEntityRepo stagingRepo = new StagingEntityRepo(entityRepo.getNameRoot());
+		FileParser fileParser = createFileParser(fileFullPath, stagingRepo, inferer.withRepo(stagingRepo));
+		try {
+			fileParser.parse();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return stagingRepo;
+		}
+		if (cacheKey!=null)
+			parseCache.store(cacheKey, stagingRepo);
+		return stagingRepo;
+	}
+
+	/**
+	 * Set the number of threads used to parse files. By default files are parsed
+	 * one by one in the current thread. It is ignored if expressions are resolved eagerly.
+	 * @param parserThreads
+	 */
+	public void setParserThreads(int parserThreads) {
+		this.parserThreads = parserThreads;
+	}
+
+	public int getParserThreads() {
+		return parserThreads;
+	}
+
+	/**
+	 * Set the number of threads used to resolve bindings. Files are grouped into
+	 * waves by their references, and files of a wave are resolved concurrently.
+	 * By default files are resolved one by one in the current thread.
+	 * @param resolverThreads
+	 */
+	public void setResolverThreads(int resolverThreads) {
+		inferer.setResolverThreads(resolverThreads);
+	}
+
+	public int getResolverThreads() {
+		return inferer.getResolverThreads();
+	}
+
+	/**
+	 * Set the directory of parse cache. If it is set, the parsing result of each file 
+	 * is kept in the directory, and unchanged files are not parsed again in the next run.
+	 * It is ignored if expressions are resolved eagerly.
+	 * @param parseCacheDir - null to disable the cache
+	 */
+	public void setParseCacheDir(String parseCacheDir) {
+		this.parseCache = (parseCacheDir==null)?null:new ParseCache(parseCacheDir, supportedLanguage());
+	}
+
+	public ParseCache getParseCache() {
+		return parseCache;
+	}
+
+	/**
+	 * Set the snapshot file of the resolved entities. If the file exists, the entities are 
+	 * restored from it without parsing and resolving the files; otherwise the snapshot is 
+	 * written after the bindings are resolved. The snapshot is not checked against the 
+	 * source files, so it should be removed if the files changed.
+	 * @param snapshotFile - null to disable the snapshot
+	 */
+	public void setSnapshotFile(String snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	public String getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	/**
+	 * Treat the types start with the prefixes as built-in types, in addition to
+	 * the built-in types of the language. For example, the packages of internal frameworks.
+	 * @param prefixes
+	 */
+	public void addBuiltInPrefixes(String... prefixes) {
+		inferer.addBuiltInPrefixes(prefixes);
 	}
-    
 
 	public List<String> includePaths() {
 		ArrayList<String> r = new ArrayList<String>();
@@ -163,9 +373,14 @@ abstract public class AbstractLangProcessor {
 		return this.entityRepo;
 	}
 
-//	public void setDependencyGenerator(DependencyGenerator dependencyGenerator) {
-//		this.dependencyGenerator = dependencyGenerator;
-//	}
+	/**
+	 * Set the generator of dependency matrix, e.g. FileDependencyGenerator.
+	 * The matrix is not generated by default.
+	 * @param dependencyGenerator
+	 */
+	public void setDependencyGenerator(DependencyGenerator dependencyGenerator) {
+		this.dependencyGenerator = dependencyGenerator;
+	}
 	public abstract List<String> supportedRelations();
 
 }
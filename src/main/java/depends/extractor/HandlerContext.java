@@ -29,6 +29,7 @@ import depends.entity.repo.EntityRepo;
 import depends.entity.repo.IdGenerator;
 import depends.importtypes.Import;
 import depends.relations.Inferer;
+import depends.util.SymbolTable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -96,6 +97,13 @@ public abstract class HandlerContext {
 		return functionEntity;		
 	}
 
+	/**
+	 * The symbol table of the repo, which interns the names found by the handlers
+	 */
+	public SymbolTable getSymbols() {
+		return entityRepo.getSymbols();
+	}
+
 	public void foundNewImport(Import imported) {
 		currentFileEntity.addImport(imported);
 	}
@@ -0,0 +1,151 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.extractor;
+
+import depends.entity.QualifiedName;
+import depends.entity.repo.StagingEntityRepo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParseCache keeps the parsing result (the staging repo) of each file in a directory, 
+ * keyed by the hash of the file content. Files not changed since last run are restored 
+ * from the cache instead of being parsed again.
+ * The cache entries are only valid for the same version of parsers; 
+ * FORMAT_VERSION should be increased if parsers or the entity format are changed.
+ */
+public class ParseCache {
+	private static final int FORMAT_VERSION = 3;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private File cacheDir;
+	private AtomicInteger hits = new AtomicInteger();
+	private AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * @param cacheDir - the root directory of cache
+	 * @param lang - the entries of each language are kept in their own sub-directory
+	 */
+	public ParseCache(String cacheDir, String lang) {
+		this.cacheDir = new File(cacheDir, lang);
+	}
+
+	/**
+	 * The cache key of file: the hash of the file content. The content is loaded 
+	 * by SourceCharStreams, so the parser of the same thread does not read the file again.
+	 */
+	public String keyOf(String fileFullPath) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		SourceCharStreams.digest(fileFullPath, digest);
+		byte[] hash = digest.digest();
+		char[] key = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			key[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+			key[i * 2 + 1] = HEX[hash[i] & 0xF];
+		}
+		return new String(key);
+	}
+
+	/**
+	 * Load the parsing result of the file
+	 * @param key - the cache key of the file
+	 * @param fileFullPath - the current path of the file
+	 * @param nameRoot - the root of the name tree of the repo which the staging repo is merged into
+	 * @return the staging repo of the file, or null if it is not cached (or broken)
+	 */
+	public StagingEntityRepo load(String key, String fileFullPath, QualifiedName nameRoot) {
+		File entry = entryOf(key);
+		if (!entry.exists()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+			if (in.readInt() != FORMAT_VERSION) {
+				misses.incrementAndGet();
+				return null;
+			}
+			StagingEntityRepo stagingRepo = StagingEntityRepo.readFrom(in, fileFullPath, nameRoot);
+			hits.incrementAndGet();
+			return stagingRepo;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("broken parse cache of " + fileFullPath + ", it will be parsed again: " + e.getMessage());
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Save the parsing result of a file. It must be called before the staging repo is merged.
+	 * @param key - the cache key of the file
+	 */
+	public void store(String key, StagingEntityRepo stagingRepo) {
+		File entry = entryOf(key);
+		File tmp = new File(entry.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			entry.getParentFile().mkdirs();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(FORMAT_VERSION);
+				stagingRepo.writeTo(out);
+			}
+			try {
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			//the file is not cacheable (e.g. unsupported entities); it will be parsed next time
+			tmp.delete();
+		}
+	}
+
+	private File entryOf(String key) {
+		return new File(new File(cacheDir, key.substring(0, 2)), key.substring(2));
+	}
+
+	public int getHitCount() {
+		return hits.get();
+	}
+
+	public int getMissCount() {
+		return misses.get();
+	}
+}
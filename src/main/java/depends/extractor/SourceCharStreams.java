@@ -0,0 +1,164 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.extractor;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CodePointBuffer;
+import org.antlr.v4.runtime.CodePointCharStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Load source files into ANTLR char streams, as a replacement of CharStreams.fromFileName.
+ * - The bytes are read directly into a per-thread buffer which is reused by the next file of the thread
+ *   (a memory map would be copied into the buffer anyway)
+ * - Pure ASCII files (most of the source files) are used as 8-bit code points directly 
+ *   without decoding; otherwise the bytes are decoded as UTF-8
+ * - The file loaded by digest (e.g. for the parse cache key) is not read again by the next 
+ *   fromFileName of the same file in the thread
+ * Note: the returned stream refers to the per-thread buffer, so it should not be used 
+ * after the next file is loaded in the same thread. 
+ */
+public class SourceCharStreams {
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	private static final ThreadLocal<byte[]> byteBuffers = ThreadLocal.withInitial(()->new byte[INITIAL_BUFFER_SIZE]);
+	private static final ThreadLocal<CharBuffer> charBuffers = ThreadLocal.withInitial(()->CharBuffer.allocate(INITIAL_BUFFER_SIZE));
+	/* the file loaded by digest, in the per-thread buffer */
+	private static final ThreadLocal<LoadedFile> digestedFiles = new ThreadLocal<>();
+
+	public static CharStream fromFileName(String fileName) throws IOException {
+		LoadedFile loaded = digestedFiles.get();
+		digestedFiles.remove();
+		if (loaded == null || !loaded.isUnchanged(fileName))
+			loaded = load(fileName);
+		ByteBuffer content = ByteBuffer.wrap(loaded.bytes, 0, loaded.size);
+		if (isAscii(loaded.bytes, loaded.size)) {
+			return CodePointCharStream.fromBuffer(CodePointBuffer.withBytes(content), fileName);
+		}
+		return CodePointCharStream.fromBuffer(decodeUtf8(content), fileName);
+	}
+
+	/**
+	 * Update the digest with the content of the file. The content is kept in the per-thread 
+	 * buffer for the next fromFileName of the same file.
+	 */
+	public static void digest(String fileName, MessageDigest digest) throws IOException {
+		LoadedFile loaded = load(fileName);
+		digest.update(loaded.bytes, 0, loaded.size);
+		digestedFiles.set(loaded);
+	}
+
+	private static LoadedFile load(String fileName) throws IOException {
+		Path path = Paths.get(fileName);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize > Integer.MAX_VALUE)
+				throw new IOException("file is too large: " + fileName);
+			int size = (int) fileSize;
+			byte[] bytes = byteBufferOf(size);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) break;
+			}
+			size = buffer.position();
+			return new LoadedFile(fileName, bytes, size, fileSize, Files.getLastModifiedTime(path).toMillis());
+		}
+	}
+
+	private static byte[] byteBufferOf(int size) {
+		byte[] bytes = byteBuffers.get();
+		if (bytes.length < size) {
+			bytes = new byte[size];
+			byteBuffers.set(bytes);
+		}
+		return bytes;
+	}
+
+	private static boolean isAscii(byte[] bytes, int size) {
+		for (int i = 0; i < size; i++) {
+			if (bytes[i] < 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as CharStreams: malformed input is replaced instead of reporting error
+	 */
+	private static CodePointBuffer decodeUtf8(ByteBuffer content) {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = charBuffers.get();
+		int maxChars = (int) (content.remaining() * (double) decoder.maxCharsPerByte());
+		if (chars.capacity() < maxChars) {
+			chars = CharBuffer.allocate(maxChars);
+			charBuffers.set(chars);
+		}
+		chars.clear();
+		decoder.decode(content, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		CodePointBuffer.Builder builder = CodePointBuffer.builder(chars.remaining());
+		builder.append(chars);
+		return builder.build();
+	}
+
+	private static class LoadedFile {
+		final String fileName;
+		final byte[] bytes;
+		final int size;
+		final long fileSize;
+		final long lastModified;
+
+		LoadedFile(String fileName, byte[] bytes, int size, long fileSize, long lastModified) {
+			this.fileName = fileName;
+			this.bytes = bytes;
+			this.size = size;
+			this.fileSize = fileSize;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * The same file, which is not changed since loaded
+		 */
+		boolean isUnchanged(String fileName) throws IOException {
+			if (!this.fileName.equals(fileName)) return false;
+			Path path = Paths.get(fileName);
+			return Files.size(path) == fileSize && Files.getLastModifiedTime(path).toMillis() == lastModified;
+		}
+	}
+}
@@ -25,35 +25,78 @@ SOFTWARE.
 package depends.extractor.java;
 
 import depends.entity.repo.EntityRepo;
+import depends.extractor.SourceCharStreams;
+import depends.extractor.java.JavaParser.CompilationUnitContext;
 import depends.relations.Inferer;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class JavaFileParser implements depends.extractor.FileParser{
 	private String fileFullPath;
 	private EntityRepo entityRepo;
 	private Inferer inferer;
+	private AtomicInteger llFallbackCounter;
 	public JavaFileParser(String fileFullPath, EntityRepo entityRepo, Inferer inferer) {
+		this(fileFullPath, entityRepo, inferer, null);
+	}
+
+	/**
+	 * @param llFallbackCounter - counts the files which could not be parsed in SLL mode, could be null
+	 */
+	public JavaFileParser(String fileFullPath, EntityRepo entityRepo, Inferer inferer, AtomicInteger llFallbackCounter) {
         this.fileFullPath = fileFullPath;
         this.entityRepo = entityRepo;
         this.inferer = inferer;
+        this.llFallbackCounter = llFallbackCounter;
 	}
 
 	@Override
 	public void parse() throws IOException {
-        CharStream input = CharStreams.fromFileName(fileFullPath);
+        CharStream input = SourceCharStreams.fromFileName(fileFullPath);
         Lexer lexer = new JavaLexer(input);
         CommonTokenStream tokens = new CommonTokenStream(lexer);
         JavaParser parser = new JavaParser(tokens);
+        CompilationUnitContext compilationUnit = parseCompilationUnit(parser, tokens);
         JavaListener bridge = new JavaListener(fileFullPath, entityRepo,inferer);
 	    ParseTreeWalker walker = new ParseTreeWalker();
-	    walker.walk(bridge, parser.compilationUnit());
+	    walker.walk(bridge, compilationUnit);
     }
+
+	/**
+	 * Two-stage parsing: the faster SLL prediction is tried first, and bails out 
+	 * on the first syntax error. Only in that case the file is re-parsed with 
+	 * full LL prediction and the default error recovery.
+	 * @param parser
+	 * @param tokens
+	 * @return
+	 */
+	private CompilationUnitContext parseCompilationUnit(JavaParser parser, CommonTokenStream tokens) {
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		try {
+			return parser.compilationUnit();
+		} catch (ParseCancellationException e) {
+			if (llFallbackCounter!=null)
+				llFallbackCounter.incrementAndGet();
+			tokens.seek(0);
+			parser.reset();
+			parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+			parser.setErrorHandler(new DefaultErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+			return parser.compilationUnit();
+		}
+	}
 	
 }
@@ -48,6 +48,12 @@ public class JavaListener extends JavaParserBaseListener {
 		context.startFile(fileFullPath);
 	}
 
+	@Override
+	public void exitCompilationUnit(CompilationUnitContext ctx) {
+		expressionUsage.clear();
+		super.exitCompilationUnit(ctx);
+	}
+
 	////////////////////////
 	// Package
 	@Override
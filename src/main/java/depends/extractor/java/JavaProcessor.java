@@ -25,18 +25,25 @@ SOFTWARE.
 package depends.extractor.java;
 
 import depends.entity.repo.BuiltInType;
+import depends.entity.repo.EntityRepo;
 import depends.extractor.AbstractLangProcessor;
 import depends.extractor.FileParser;
 import depends.relations.ImportLookupStrategy;
+import depends.relations.Inferer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static depends.deptypes.DependencyType.*;
 
 public class JavaProcessor extends AbstractLangProcessor {
+	private static final Logger logger = LoggerFactory.getLogger(JavaProcessor.class);
     private static final String JAVA_LANG = "java";
     private static final String JAVA_SUFFIX = ".java";
+    private AtomicInteger llFallbackFiles = new AtomicInteger();
     
     public JavaProcessor() {
     	super(false);
@@ -53,8 +60,21 @@ public class JavaProcessor extends AbstractLangProcessor {
 	}
 	
 	@Override
-	protected FileParser createFileParser(String fileFullPath) {
-		return new JavaFileParser(fileFullPath,entityRepo, inferer);
+	protected FileParser createFileParser(String fileFullPath, EntityRepo entityRepo, Inferer inferer) {
+		return new JavaFileParser(fileFullPath,entityRepo, inferer, llFallbackFiles);
+	}
+
+	@Override
+	protected void afterAllFilesParsed() {
+		logger.info(llFallbackFiles.get() + " files need to be re-parsed with full LL prediction");
+	}
+
+	/**
+	 * The number of files which could not be parsed by SLL prediction 
+	 * @return
+	 */
+	public int getLLFallbackFileCount() {
+		return llFallbackFiles.get();
 	}
 	
 	@Override
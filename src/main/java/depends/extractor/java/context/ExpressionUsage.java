@@ -24,29 +24,45 @@ SOFTWARE.
 
 package depends.extractor.java.context;
 
+import depends.entity.ContainerEntity;
 import depends.entity.Expression;
 import depends.entity.repo.IdGenerator;
 import depends.extractor.HandlerContext;
 import depends.extractor.java.JavaParser.ExpressionContext;
 import depends.extractor.java.JavaParser.MethodCallContext;
 import depends.extractor.java.JavaParser.PrimaryContext;
+import depends.util.SymbolTable;
 import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.misc.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
 
 public class ExpressionUsage {
+	private static final Logger logger = LoggerFactory.getLogger(ExpressionUsage.class);
 	HandlerContext context;
 	IdGenerator idGenerator;
+	/* the symbol table of the repo, which interns the raw types and identifiers */
+	private SymbolTable symbols;
+	/* the parse tree node of expressions, grouped by container. 
+	 * It is only used during parsing, and should be cleared after that, 
+	 * so the parse tree will not be retained by the entities. */
+	private HashMap<ContainerEntity, HashMap<RuleContext, Expression>> expressionsOfContainer = new HashMap<>();
 	public ExpressionUsage(HandlerContext context, IdGenerator idGenerator) {
 		this.context = context;
 		this.idGenerator = idGenerator;
+		this.symbols = context.getSymbols();
 	}
 
 	public void foundExpression(ExpressionContext ctx) {
 		Expression parent = findParentInStack(ctx);
 		/* create expression and link it with parent*/
 		Expression expression = new Expression(idGenerator.generateId());
-		context.lastContainer().addExpression(ctx,expression);
+		context.lastContainer().addExpression(expression);
+		expressionsOf(context.lastContainer()).put(ctx, expression);
 
-		expression.text = ctx.getText(); //for debug purpose. no actual effect
+		keepSourceInterval(ctx, expression);
 		expression.parent = parent;
 		if (expression.parent!=null) {
 			if (expression.parent.deduceTypeBasedId==null) 
@@ -77,25 +93,25 @@ public class ExpressionUsage {
  */
 		//method call
 		if (ctx.methodCall()!=null) {
-			expression.identifier = getMethodCallIdentifier(ctx.methodCall());
+			expression.setIdentifier(getMethodCallIdentifier(ctx.methodCall()), symbols);
 			expression.isCall = true;
 		}
 		//new 
 		if (ctx.NEW()!=null && ctx.creator()!=null) {
-			expression.rawType = CreatorContextHelper.getCreatorType(ctx.creator());
+			expression.setRawType(CreatorContextHelper.getCreatorType(ctx.creator()), symbols);
 			expression.isCall = true;
 			expression.deriveTypeFromChild = false;
 		}
 		
 		if (ctx.typeCast()!=null) {
 			expression.isCast=true;
-			expression.rawType = ctx.typeCast().typeType().getText();
+			expression.setRawType(ctx.typeCast().typeType().getText(), symbols);
 			expression.deriveTypeFromChild = false;
 		}
 		
 		if (ctx.bop!=null && ctx.bop.getText().equals("instanceof")) {
 			expression.isCast=true;
-			expression.rawType = ctx.typeType().getText();
+			expression.setRawType(ctx.typeType().getText(), symbols);
 			expression.deriveTypeFromChild = false;
 		}
 		
@@ -105,19 +121,33 @@ public class ExpressionUsage {
 		
 		if (expression.isDot) {
 			if (ctx.IDENTIFIER()!=null)
-				expression.identifier = ctx.IDENTIFIER().getText();
+				expression.setIdentifier(ctx.IDENTIFIER().getText(), symbols);
 			else if (ctx.methodCall()!=null)
-				expression.identifier = getMethodCallIdentifier(ctx.methodCall());
+				expression.setIdentifier(getMethodCallIdentifier(ctx.methodCall()), symbols);
 			else if (ctx.THIS()!=null)
-				expression.identifier = "this";
+				expression.setIdentifier("this", symbols);
 			else if (ctx.innerCreator()!=null) //innner creator like new List(){}
-				expression.identifier =  ctx.innerCreator().IDENTIFIER().getText();
+				expression.setIdentifier(ctx.innerCreator().IDENTIFIER().getText(), symbols);
 			else if (ctx.SUPER()!=null)
-				expression.identifier = "super";
+				expression.setIdentifier("super", symbols);
 			return;
 		}
 	}
 
+	/**
+	 * Only the source interval is kept. The text is for debug purpose and no actual effect, 
+	 * so it is only materialized in debug mode - it is quadratic for nested expressions 
+	 * like long string concatenation or call chain.
+	 */
+	private void keepSourceInterval(ExpressionContext ctx, Expression expression) {
+		if (ctx.start==null || ctx.stop==null) return;
+		expression.startIndex = ctx.start.getStartIndex();
+		expression.stopIndex = ctx.stop.getStopIndex();
+		if (logger.isDebugEnabled() && expression.startIndex<=expression.stopIndex) {
+			expression.text = ctx.start.getInputStream().getText(Interval.of(expression.startIndex, expression.stopIndex));
+		}
+	}
+
 	private String getMethodCallIdentifier(MethodCallContext methodCall) {
 		if (methodCall.THIS()!=null) {
 			return "this";
@@ -178,18 +208,18 @@ public class ExpressionUsage {
 		//   the type will be determined by child node in the expression
 		if (ctx.literal()!=null) {
 		//2. if it is a build-in type like "hello"(string), 10(integer), etc.
-			expression.rawType = "<Built-in>";
-			expression.identifier = "<Literal>";
+			expression.setRawType("<Built-in>", symbols);
+			expression.setIdentifier("<Literal>", symbols);
 		}else if (ctx.IDENTIFIER()!=null) {
 		//2. if it is a var name, dertermine the type based on context.
-			expression.identifier = ctx.IDENTIFIER().getText();
+			expression.setIdentifier(ctx.IDENTIFIER().getText(), symbols);
 		}else if (ctx.typeTypeOrVoid()!=null) {
 		//3. if given type directly
-			expression.rawType = ClassTypeContextHelper.getClassName(ctx.typeTypeOrVoid());
+			expression.setRawType(ClassTypeContextHelper.getClassName(ctx.typeTypeOrVoid()), symbols);
 		}else if (ctx.THIS()!=null){
-			expression.identifier = "this";
+			expression.setIdentifier("this", symbols);
 		}else if (ctx.SUPER()!=null){
-			expression.identifier = "super";
+			expression.setIdentifier("super", symbols);
 		}
 	}
 
@@ -199,7 +229,24 @@ public class ExpressionUsage {
 		if (context.lastContainer()==null) {
 			return null;
 		}
-		if (context.lastContainer().expressions().containsKey(ctx.parent)) return context.lastContainer().expressions().get(ctx.parent);
+		Expression parent = expressionsOf(context.lastContainer()).get(ctx.parent);
+		if (parent!=null) return parent;
 		return findParentInStack(ctx.parent);
 	}
+
+	private HashMap<RuleContext, Expression> expressionsOf(ContainerEntity container) {
+		HashMap<RuleContext, Expression> expressions = expressionsOfContainer.get(container);
+		if (expressions==null) {
+			expressions = new HashMap<>();
+			expressionsOfContainer.put(container, expressions);
+		}
+		return expressions;
+	}
+
+	/**
+	 * Drop all references to the parse tree after the file is parsed
+	 */
+	public void clear() {
+		expressionsOfContainer.clear();
+	}
 }
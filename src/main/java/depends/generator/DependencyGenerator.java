@@ -0,0 +1,188 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.generator;
+
+import depends.entity.Entity;
+import depends.entity.repo.EntityRepo;
+import depends.matrix.core.DependencyMatrix;
+import depends.relations.RelationStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * DependencyGenerator builds the dependency matrix from the resolved relations of the repo.
+ * The relations between entities are projected to the granularity of the generator
+ * (e.g. file, type or method): the relation from/to an entity is counted as the relation 
+ * from/to its nearest ancestor (or itself) of that granularity.
+ * The projection of each entity is calculated once.
+ */
+public abstract class DependencyGenerator {
+	private static final int UNKNOWN = -2;
+	private static final int NONE = -1;
+	/* the source nodes handled by a task when generating in parallel */
+	private static final int NODES_PER_TASK = 1<<14;
+	private int threads = 1;
+
+	/**
+	 * Whether the entity is a node of the matrix
+	 */
+	protected abstract boolean isNode(Entity entity);
+
+	/**
+	 * The name of the node in matrix
+	 */
+	protected abstract String nameOf(Entity node);
+
+	/**
+	 * Set the number of threads used to project the relations. By default it runs in the current thread.
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public DependencyMatrix build(EntityRepo entityRepo) {
+		DependencyMatrix dependencyMatrix = new DependencyMatrix();
+		for (Entity entity:entityRepo.getEntities()) {
+			if (isNode(entity)) 
+				dependencyMatrix.addNode(nameOf(entity), entity.getId());
+		}
+		RelationStore relations = entityRepo.getRelationStore();
+		if (relations==null) 
+			return dependencyMatrix;
+		int[] projections = new int[relations.getIdNodeCount()];
+		Arrays.fill(projections, UNKNOWN);
+		int nodeCount = relations.getIdNodeCount();
+		if (threads<=1 || nodeCount<=NODES_PER_TASK) {
+			new ProjectedRelations(relations, projections, 0, nodeCount).addTo(dependencyMatrix);
+			return dependencyMatrix;
+		}
+		/* each task projects a range of source nodes; the results are added in the order of ranges, 
+		 * so the matrix is the same as the single-threaded one */
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<ProjectedRelations>> tasks = new ArrayList<>();
+			for (int start=0;start<nodeCount;start+=NODES_PER_TASK) {
+				int end = Math.min(start+NODES_PER_TASK, nodeCount);
+				int from = start;
+				tasks.add(executor.submit(()->new ProjectedRelations(relations, projections, from, end)));
+			}
+			for (Future<ProjectedRelations> task:tasks) {
+				task.get().addTo(dependencyMatrix);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return dependencyMatrix;
+	}
+
+	/**
+	 * The id of the node which the entity of the relation node is projected to. 
+	 * The ancestors in relations are cached on the way up, so each of them is walked only once.
+	 * The cache could be shared by threads, since the same value is always written for a node.
+	 * @return the id, or NONE if the entity is not under any node of the matrix
+	 */
+	private int projectionOf(RelationStore relations, int[] projections, int node) {
+		if (node>=projections.length)
+			return NONE; //entities without id, e.g. built-in types
+		int projection = projections[node];
+		if (projection!=UNKNOWN)
+			return projection;
+		int[] walked = new int[8];
+		int walkedCount = 0;
+		Entity entity = relations.getEntity(node);
+		projection = NONE;
+		while (entity!=null) {
+			if (isNode(entity)) {
+				projection = entity.getId();
+				break;
+			}
+			int id = entity.getId();
+			if (id>=0 && id<projections.length && relations.getEntity(id)==entity) {
+				if (projections[id]!=UNKNOWN) {
+					projection = projections[id];
+					break;
+				}
+				if (walkedCount==walked.length)
+					walked = Arrays.copyOf(walked, walkedCount*2);
+				walked[walkedCount++] = id;
+			}
+			entity = entity.getParent();
+		}
+		for (int i=0;i<walkedCount;i++) {
+			projections[walked[i]] = projection;
+		}
+		projections[node] = projection;
+		return projection;
+	}
+
+	/**
+	 * The projected relations of a range of source nodes
+	 */
+	private class ProjectedRelations {
+		private int[] froms;
+		private int[] tos;
+		private byte[] types;
+		private int size = 0;
+
+		ProjectedRelations(RelationStore relations, int[] projections, int start, int end) {
+			int capacity = relations.getRelationEnd(end-1) - relations.getRelationStart(start);
+			froms = new int[capacity];
+			tos = new int[capacity];
+			types = new byte[capacity];
+			for (int node=start;node<end;node++) {
+				int relationStart = relations.getRelationStart(node);
+				int relationEnd = relations.getRelationEnd(node);
+				if (relationStart==relationEnd) continue;
+				int from = projectionOf(relations, projections, node);
+				if (from==NONE) continue;
+				for (int relation=relationStart;relation<relationEnd;relation++) {
+					int to = projectionOf(relations, projections, relations.getTarget(relation));
+					if (to==NONE) continue;
+					froms[size] = from;
+					tos[size] = to;
+					types[size] = relations.getTypeCode(relation);
+					size++;
+				}
+			}
+		}
+
+		void addTo(DependencyMatrix dependencyMatrix) {
+			for (int i=0;i<size;i++) {
+				dependencyMatrix.addDependency(RelationStore.typeOf(types[i]), froms[i], tos[i], 1);
+			}
+		}
+	}
+}
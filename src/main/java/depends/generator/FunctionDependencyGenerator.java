@@ -22,31 +22,22 @@ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
 SOFTWARE.
 */
 
-package depends.relations;
+package depends.generator;
 
-import depends.entity.FunctionCall;
+import depends.entity.Entity;
 import depends.entity.FunctionEntity;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-
-public class FunctionMatcher {
-
-	private HashSet<String> fnames;
-	public FunctionMatcher(ArrayList<FunctionEntity> functions) {
-		fnames = new HashSet<>();
-		for (FunctionEntity f:functions) {
-			this.fnames.add(f.getRawName());
-		}
+/**
+ * Generate the dependencies between methods/functions
+ */
+public class FunctionDependencyGenerator extends DependencyGenerator {
+	@Override
+	protected boolean isNode(Entity entity) {
+		return entity instanceof FunctionEntity;
 	}
 
-	public boolean containsAll(List<FunctionCall> functionCalls) {
-		for (FunctionCall fCall:functionCalls) {
-			if (!fnames.contains(fCall.getRawName()))
-				return false;
-		}
-		return true;
+	@Override
+	protected String nameOf(Entity node) {
+		return node.getDisplayName();
 	}
-
 }
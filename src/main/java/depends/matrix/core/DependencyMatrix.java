@@ -25,37 +25,84 @@ SOFTWARE.
 package depends.matrix.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
+/**
+ * The dependency matrix. Each pair of nodes (from, to) is kept once, found by the key 
+ * from<<32|to in an open addressing table; the weights are kept in an int array per 
+ * dependency type, indexed by the pair. 
+ * The DependencyPair objects are only created when required.
+ */
 public class DependencyMatrix {
-    private HashMap<String, DependencyPair> dependencyPairs = new HashMap<>();
+	private static final long EMPTY = -1L;
+	private long[] slotKeys = emptySlots(16);
+	private int[] slotPairs = new int[16];
+	private int[] pairFrom = new int[16];
+	private int[] pairTo = new int[16];
+	private int pairCount = 0;
+	private ArrayList<WeightChannel> channels = new ArrayList<>();
+	private HashMap<String, WeightChannel> channelsByType = new HashMap<>();
+	private WeightChannel lastChannel = null;
     private ArrayList<String> nodes = new ArrayList<>();
-    private HashMap<Integer,String> nodeIdToName = new HashMap<>();
-	private Integer relationCount=0;
+    private String[] nodeIdToName = new String[16];
+    private int nodeIdLimit = 0;
+	private int relationCount=0;
     public DependencyMatrix() {
     }
 	
 	public Collection<DependencyPair> getDependencyPairs() {
-        return dependencyPairs.values();
+		List<DependencyPair> dependencyPairs = new ArrayList<>(pairCount);
+		for (int pair=0;pair<pairCount;pair++) {
+			DependencyPair dependencyPair = new DependencyPair(pairFrom[pair],pairTo[pair]);
+			for (WeightChannel channel:channels) {
+				if (channel.present.get(pair))
+					dependencyPair.addDependency(channel.type, channel.weights[pair], channel.detailOf(pair));
+			}
+			dependencyPairs.add(dependencyPair);
+		}
+        return dependencyPairs;
     }
 
 	public void addNode(String name, int id) {
 		this.nodes.add(name);
-		this.nodeIdToName.put(id, name);
+		if (id>=nodeIdToName.length)
+			nodeIdToName = Arrays.copyOf(nodeIdToName, Math.max(id+1, nodeIdToName.length*2));
+		this.nodeIdToName[id] = name;
+		nodeIdLimit = Math.max(nodeIdLimit, id+1);
+	}
+
+	/**
+	 * The ids of nodes are in [0, getNodeIdLimit())
+	 */
+	public int getNodeIdLimit() {
+		return nodeIdLimit;
 	}
 	
-	public void addDependency(String depType, Integer from, Integer to,  int weight,String detail) {
-		if(from.equals(to) || from == -1 || to == -1) {
+	public void addDependency(String depType, int from, int to,  int weight,String detail) {
+		if(from == to || from == -1 || to == -1) {
 		    return;
 		}
-		if (dependencyPairs.get(DependencyPair.key(from,to))==null) {
-			dependencyPairs.put(DependencyPair.key(from,to),new DependencyPair(from,to));
-		}
-		DependencyPair dependencyPair = dependencyPairs.get(DependencyPair.key(from,to));
-		dependencyPair.addDependency(depType,weight,detail);
+		int pair = pairOf(from, to);
+		WeightChannel channel = channelOf(depType);
+		channel.add(pair, weight);
+		channel.addDetail(pair, detail);
 		relationCount+=weight;		
 	}
+
+	/**
+	 * Add the dependency without details
+	 */
+	public void addDependency(String depType, int from, int to, int weight) {
+		if(from == to || from == -1 || to == -1) {
+		    return;
+		}
+		channelOf(depType).add(pairOf(from, to), weight);
+		relationCount+=weight;
+	}
 	
     public ArrayList<String> getNodes() {
 		return nodes;
@@ -76,6 +123,171 @@ public class DependencyMatrix {
 //	}
 
 	public String getNodeName(Integer key) {
-		return nodeIdToName.get(key);
+		if (key==null || key<0 || key>=nodeIdToName.length) return null;
+		return nodeIdToName[key];
+	}
+
+	/**
+	 * The pairs are numbered from 0 to getPairCount()-1 in the order of being added
+	 */
+	public int getPairCount() {
+		return pairCount;
+	}
+
+	public int getPairFrom(int pair) {
+		return pairFrom[pair];
+	}
+
+	public int getPairTo(int pair) {
+		return pairTo[pair];
+	}
+
+	/**
+	 * The dependency types in the order of being added
+	 */
+	public List<String> getDependencyTypes() {
+		List<String> types = new ArrayList<>(channels.size());
+		for (WeightChannel channel:channels) {
+			types.add(channel.type);
+		}
+		return types;
+	}
+
+	/**
+	 * The weight of the dependency type of the pair
+	 * @return 0 if no such dependency
+	 */
+	public int getWeight(int pair, String depType) {
+		WeightChannel channel = channelsByType.get(depType);
+		if (channel==null || pair>=channel.weights.length) return 0;
+		return channel.weights[pair];
+	}
+
+	/**
+	 * Whether the pair has the dependency type, even if its weight is 0
+	 */
+	public boolean hasDependency(int pair, String depType) {
+		WeightChannel channel = channelsByType.get(depType);
+		return channel!=null && channel.present.get(pair);
+	}
+
+	/**
+	 * The details of the dependency type of the pair
+	 * @return empty string if no details
+	 */
+	public String getDetails(int pair, String depType) {
+		WeightChannel channel = channelsByType.get(depType);
+		if (channel==null) return "";
+		return channel.detailOf(pair);
+	}
+
+	private WeightChannel channelOf(String depType) {
+		WeightChannel channel = lastChannel;
+		if (channel!=null && channel.type.equals(depType))
+			return channel;
+		channel = channelsByType.get(depType);
+		if (channel==null) {
+			channel = new WeightChannel(depType);
+			channelsByType.put(depType, channel);
+			channels.add(channel);
+		}
+		lastChannel = channel;
+		return channel;
+	}
+
+	private int pairOf(int from, int to) {
+		long key = ((long)from<<32) | (to & 0xFFFFFFFFL);
+		int mask = slotKeys.length-1;
+		int slot = hash(key) & mask;
+		while (slotKeys[slot]!=EMPTY) {
+			if (slotKeys[slot]==key)
+				return slotPairs[slot];
+			slot = (slot+1) & mask;
+		}
+		int pair = pairCount++;
+		if (pair==pairFrom.length) {
+			pairFrom = Arrays.copyOf(pairFrom, pair*2);
+			pairTo = Arrays.copyOf(pairTo, pair*2);
+		}
+		pairFrom[pair] = from;
+		pairTo[pair] = to;
+		slotKeys[slot] = key;
+		slotPairs[slot] = pair;
+		/* keep the table at most half full */
+		if (pairCount*2>slotKeys.length)
+			rehash();
+		return pair;
+	}
+
+	private void rehash() {
+		long[] keys = slotKeys;
+		int[] pairs = slotPairs;
+		slotKeys = emptySlots(keys.length*2);
+		slotPairs = new int[keys.length*2];
+		int mask = slotKeys.length-1;
+		for (int i=0;i<keys.length;i++) {
+			if (keys[i]==EMPTY) continue;
+			int slot = hash(keys[i]) & mask;
+			while (slotKeys[slot]!=EMPTY)
+				slot = (slot+1) & mask;
+			slotKeys[slot] = keys[i];
+			slotPairs[slot] = pairs[i];
+		}
+	}
+
+	private static long[] emptySlots(int size) {
+		long[] slots = new long[size];
+		Arrays.fill(slots, EMPTY);
+		return slots;
+	}
+
+	private static int hash(long key) {
+		key ^= key>>>33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key>>>33;
+		return (int)key;
+	}
+
+	/**
+	 * The weights of one dependency type, indexed by pair
+	 */
+	private static class WeightChannel {
+		final String type;
+		int[] weights = new int[16];
+		final BitSet present = new BitSet();
+		/* details are rarely used, so they are only kept for the pairs with details */
+		HashMap<Integer, StringBuilder> details = null;
+
+		WeightChannel(String type) {
+			this.type = type;
+		}
+
+		void add(int pair, int weight) {
+			if (pair>=weights.length)
+				weights = Arrays.copyOf(weights, Math.max(pair+1, weights.length*2));
+			weights[pair] += weight;
+			present.set(pair);
+		}
+
+		/**
+		 * Details are joined by new lines, as in DependencyValue
+		 */
+		void addDetail(int pair, String detail) {
+			StringBuilder existed = details==null?null:details.get(pair);
+			if (existed!=null) {
+				existed.append("\n").append(detail);
+				return;
+			}
+			if (detail!=null && detail.isEmpty())
+				return;
+			if (details==null)
+				details = new HashMap<>();
+			details.put(pair, new StringBuilder().append(detail));
+		}
+
+		String detailOf(int pair) {
+			StringBuilder detail = details==null?null:details.get(pair);
+			return detail==null?"":detail.toString();
+		}
 	}
 }
@@ -25,13 +25,13 @@ SOFTWARE.
 package depends.matrix.transform;
 
 import depends.matrix.core.DependencyMatrix;
-import depends.matrix.core.DependencyPair;
-import depends.matrix.core.DependencyValue;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 public class MatrixLevelReducer {
 
@@ -48,66 +48,76 @@ public class MatrixLevelReducer {
 		if (level < 0)
 			return origin;
 
-		ArrayList<String> reMappedNodes = new ArrayList<>();
+		/* the node at level of each original node is calculated only once */
+		HashMap<String, String> nodeAtLevel = new HashMap<>();
 		for (String node : origin.getNodes()) {
-			String newNode = calcuateNodeAtLevel(node, level);
-			if (!reMappedNodes.contains(newNode)) {
-				reMappedNodes.add(newNode);
-			}
+			nodeAtLevel.computeIfAbsent(node, name -> calcuateNodeAtLevel(name, level));
 		}
 		// sort nodes by name
-		reMappedNodes.sort(new Comparator<String>() {
-			@Override
-			public int compare(String o1, String o2) {
-				return o1.compareTo(o2);
-			}
-		});
+		List<String> reMappedNodes = new ArrayList<>(new HashSet<>(nodeAtLevel.values()));
+		reMappedNodes.sort(null);
 	    DependencyMatrix ordered = new DependencyMatrix();
 		for (int id=0;id<reMappedNodes.size();id++) {
 			nodesMap.put(reMappedNodes.get(id), id);
 			ordered.addNode(reMappedNodes.get(id), id);
 		}
+		// the new id of each original id
+		int[] newIdOfId = new int[origin.getNodeIdLimit()];
+		Arrays.fill(newIdOfId, -1);
+		for (int id=0;id<newIdOfId.length;id++) {
+			String node = origin.getNodeName(id);
+			if (node!=null)
+				newIdOfId[id] = nodesMap.get(nodeAtLevel.get(node));
+		}
 
 		// add dependencies
-		for (DependencyPair dependencyPair : origin.getDependencyPairs()) {
-			for (DependencyValue dep : dependencyPair.getDependencies()) {
-				ordered.addDependency(dep.getType(), translateToNewId(dependencyPair.getFrom()),
-						translateToNewId(dependencyPair.getTo()), dep.getWeight(), dep.getDetails());
+		List<String> types = origin.getDependencyTypes();
+		for (int pair=0;pair<origin.getPairCount();pair++) {
+			int from = translateToNewId(newIdOfId, origin.getPairFrom(pair));
+			int to = translateToNewId(newIdOfId, origin.getPairTo(pair));
+			for (String type : types) {
+				if (!origin.hasDependency(pair, type)) continue;
+				ordered.addDependency(type, from, to, origin.getWeight(pair, type), origin.getDetails(pair, type));
 			}
 		}
 		return ordered;
 	}
 
+	/**
+	 * The node name of the first level segments. The segments are separated by 
+	 * file separator if the name contains it, otherwise by '.'; empty segments are ignored.
+	 */
 	public static String calcuateNodeAtLevel(String node, int level) {
-		String splitterRegex = "\\.";
 		String splitter = ".";
 		if (node.contains(File.separator)) {
 			splitter = File.separator;
-			splitterRegex = File.separator;
 		}
-		String prefix = "";
+		StringBuilder sb = new StringBuilder(node.length());
 		if (node.startsWith(splitter)) {
-			prefix = splitter;
+			sb.append(splitter);
 		}
-		String[] segments = node.split(splitterRegex);
-		StringBuffer sb = new StringBuffer();
+		int prefixLength = sb.length();
 		int count = 0;
-		for (int i = 0; i < segments.length; i++) {
-			if (count == level)
-				break;
-			if (segments[i].length() > 0) {
-				if (sb.length()>0)
+		int segmentStart = 0;
+		while (count < level && segmentStart <= node.length()) {
+			int segmentEnd = node.indexOf(splitter, segmentStart);
+			if (segmentEnd < 0)
+				segmentEnd = node.length();
+			if (segmentEnd > segmentStart) {
+				if (sb.length() > prefixLength)
 					sb.append(splitter);
-				sb.append(segments[i]);
+				sb.append(node, segmentStart, segmentEnd);
 				count++;
 			}
+			segmentStart = segmentEnd + splitter.length();
 		}
-		return prefix + sb.toString();
+		return sb.toString();
 	}
 
-	private Integer translateToNewId(Integer id) {
-		String newNode = calcuateNodeAtLevel(origin.getNodeName(id), level);
-		return nodesMap.get(newNode);
+	private int translateToNewId(int[] newIdOfId, int id) {
+		if (id < 0 || id >= newIdOfId.length)
+			return -1;
+		return newIdOfId[id];
 	}
 
 	private int stringToPositiveInt(String level) {
@@ -0,0 +1,147 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.relations;
+
+import depends.entity.Entity;
+import depends.entity.FileEntity;
+import depends.entity.FunctionCall;
+import depends.entity.FunctionEntity;
+import depends.entity.TypeEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * FunctionNameIndex is an inverted index from function name to the declared types 
+ * which have functions with the name. It is built once after all files are parsed, 
+ * and used to deduce candidate types from the functions called on a var: the types having
+ * all the called functions are the intersection of the types of each function name.
+ * The intersection is restricted to the types of the visible files first, so the cost 
+ * depends on the visible types, not on the common function names of the whole repo.
+ */
+public class FunctionNameIndex {
+	/* declared types and their files, in the order of files; the index is the ordinal of type */
+	private final List<TypeEntity> types = new ArrayList<>();
+	private final List<FileEntity> declaringFiles = new ArrayList<>();
+	/* the types of a file are consecutive; the range [start, end) of ordinals by file */
+	private final IdentityHashMap<FileEntity, int[]> typeRangeByFile = new IdentityHashMap<>();
+	/* ordinals of types in ascending order, by function name */
+	private final HashMap<String, int[]> typesByFunctionName = new HashMap<>();
+
+	public FunctionNameIndex(Collection<Entity> entities) {
+		HashMap<String, List<Integer>> postings = new HashMap<>();
+		for (Entity entity:entities) {
+			if (!(entity instanceof FileEntity)) continue;
+			FileEntity file = (FileEntity)entity;
+			if (file.getDeclaredTypes().isEmpty() || typeRangeByFile.containsKey(file)) continue;
+			typeRangeByFile.put(file, new int[] {types.size(), types.size()+file.getDeclaredTypes().size()});
+			for (TypeEntity type:file.getDeclaredTypes()) {
+				int ordinal = types.size();
+				types.add(type);
+				declaringFiles.add(file);
+				for (FunctionEntity function:type.getFunctions()) {
+					List<Integer> posting = postings.computeIfAbsent(function.getRawName(), name->new ArrayList<>(2));
+					if (posting.isEmpty() || posting.get(posting.size()-1)!=ordinal)
+						posting.add(ordinal);
+				}
+			}
+		}
+		for (String name:postings.keySet()) {
+			List<Integer> posting = postings.get(name);
+			int[] ordinals = new int[posting.size()];
+			for (int i=0;i<ordinals.length;i++) {
+				ordinals[i] = posting.get(i);
+			}
+			typesByFunctionName.put(name, ordinals);
+		}
+	}
+
+	/**
+	 * The types declared in the given files, which have all the called functions. 
+	 * The types are in the order of files being parsed.
+	 * @param functionCalls
+	 * @param files
+	 * @return
+	 */
+	public List<TypeEntity> typesWithAll(List<FunctionCall> functionCalls, Set<FileEntity> files) {
+		List<TypeEntity> result = new ArrayList<>();
+		int[][] postings = new int[functionCalls.size()][];
+		for (int i=0;i<postings.length;i++) {
+			int[] posting = typesByFunctionName.get(functionCalls.get(i).getRawName());
+			if (posting==null)
+				return result;
+			postings[i] = posting;
+		}
+		Arrays.sort(postings, (a,b)->Integer.compare(a.length, b.length));
+		List<int[]> ranges = typeRangesOf(files);
+		int candidateCount = 0;
+		for (int[] range:ranges) {
+			candidateCount += range[1] - range[0];
+		}
+		/* a posting list shorter than the visible types is scanned instead, 
+		 * e.g. a rare function name in a big project */
+		if (postings.length>0 && postings[0].length<candidateCount) {
+			for (int ordinal:postings[0]) {
+				if (files.contains(declaringFiles.get(ordinal)) && containedByAll(postings, 1, ordinal))
+					result.add(types.get(ordinal));
+			}
+			return result;
+		}
+		for (int[] range:ranges) {
+			for (int ordinal=range[0];ordinal<range[1];ordinal++) {
+				if (containedByAll(postings, 0, ordinal))
+					result.add(types.get(ordinal));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The ranges of ordinals of the types declared in the files, in ascending order
+	 */
+	private List<int[]> typeRangesOf(Set<FileEntity> files) {
+		List<int[]> ranges = new ArrayList<>(files.size());
+		for (FileEntity file:files) {
+			int[] range = typeRangeByFile.get(file);
+			if (range!=null)
+				ranges.add(range);
+		}
+		ranges.sort((a,b)->Integer.compare(a[0], b[0]));
+		return ranges;
+	}
+
+	private static boolean containedByAll(int[][] postings, int from, int ordinal) {
+		for (int i=from;i<postings.length;i++) {
+			if (Arrays.binarySearch(postings[i], ordinal)<0)
+				return false;
+		}
+		return true;
+	}
+}
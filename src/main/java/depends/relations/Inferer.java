@@ -29,26 +29,45 @@ import depends.entity.repo.BuiltInType;
 import depends.entity.repo.EntityRepo;
 import depends.entity.repo.NullBuiltInType;
 import depends.importtypes.Import;
+import depends.util.SymbolTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 public class Inferer {
 	private static final Logger logger = LoggerFactory.getLogger(Inferer.class);
 
-	static final public TypeEntity buildInType = new TypeEntity("built-in", null, -1);
-	static final public TypeEntity externalType = new TypeEntity("external", null, -1);
-	static final public TypeEntity genericParameterType = new TypeEntity("T", null, -1);
+	static final public TypeEntity buildInType = sharedType("built-in");
+	static final public TypeEntity externalType = sharedType("external");
+	static final public TypeEntity genericParameterType = sharedType("T");
+	private static final int DEFAULT_NAME_CACHE_SIZE = 1<<16;
+	private static final Object NOT_FOUND = new Object();
 	private BuiltInType buildInTypeManager = new NullBuiltInType();
 	private ImportLookupStrategy importLookupStrategy;
 	private HashSet<String> unsolvedSymbols;
 	private EntityRepo repo;
 
 	private boolean eagerExpressionResolve = false;
+	private NameCache nameCache = new NameCache(DEFAULT_NAME_CACHE_SIZE);
+	/* changed whenever the type hierarchy changes, the cached names of previous epochs are stale */
+	private int nameCacheEpoch = 0;
+	private long nameCacheHits = 0;
+	private long nameCacheMisses = 0;
+	private int resolverThreads = 1;
+	private AtomicReference<FunctionNameIndex> functionNameIndex = new AtomicReference<>();
 
 	public Inferer(EntityRepo repo, ImportLookupStrategy importLookupStrategy, BuiltInType buildInTypeManager, boolean eagerExpressionResolve) {
 		this.repo = repo;
@@ -58,15 +77,39 @@ public class Inferer {
 		this.eagerExpressionResolve = eagerExpressionResolve;
 	}
 
+	/* the shared types are named outside of the name trees, which are owned by repos */
+	private static TypeEntity sharedType(String name) {
+		TypeEntity type = new TypeEntity(name, null, -1);
+		type.setQualifiedName(QualifiedName.detached(name));
+		return type;
+	}
+
+	/**
+	 * Create an inferer with the same language settings but works on another repo,
+	 * for example, the staging repo of a parser thread
+	 * @param repo
+	 * @return
+	 */
+	public Inferer withRepo(EntityRepo repo) {
+		return new Inferer(repo, importLookupStrategy, buildInTypeManager, eagerExpressionResolve);
+	}
+
 	/**
 	 * Resolve all bindings
 	 * - Firstly, we resolve all types from there names.
 	 * - Secondly, we resolve all expressions (expression will use type infomation of previous step
 	 */
 	public  Set<String> resolveAllBindings() {
-		resolveTypes();
-		resolveExpressoins(); 
-		new RelationCounter(repo.getEntities()).computeRelations();
+		if (resolverThreads>1) {
+			resolveInParallel();
+		}else {
+			resolveTypes();
+			resolveExpressoins(); 
+		}
+		repo.setRelationStore(new RelationCounter(repo.getEntities()).computeRelations());
+		if (logger.isDebugEnabled()) {
+			logger.debug("name cache hits " + nameCacheHits + ", misses " + nameCacheMisses);
+		}
 		return unsolvedSymbols;
 	}
 
@@ -82,6 +125,64 @@ public class Inferer {
 				((ContainerEntity)entity).resolveExpressions(this);
 		}
 	}
+
+	/**
+	 * Resolve types and then expressions of files in waves (see {@link ResolutionSchedule}).
+	 * The files of a wave are taken by the workers one by one; each worker has its own inferer, 
+	 * so the name cache is confined to the thread. The result is the same as the sequential resolution.
+	 */
+	private void resolveInParallel() {
+		ResolutionSchedule schedule = new ResolutionSchedule(repo, this);
+		if (logger.isDebugEnabled()) {
+			int widest = 0;
+			for (List<FileEntity> wave:schedule.getWaves()) {
+				widest = Math.max(widest, wave.size());
+			}
+			logger.debug("resolve files in " + schedule.getWaves().size() + " waves, at most " 
+						+ widest + " files per wave");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(resolverThreads);
+		try {
+			resolveWaves(executor, schedule, (inferer,file)->file.inferEntities(inferer));
+			for (ContainerEntity container:schedule.getLeadingContainers()) {
+				container.resolveExpressions(this);
+			}
+			resolveWaves(executor, schedule, (inferer,file)->{
+				for (ContainerEntity container:schedule.getContainersOf(file)) {
+					container.resolveExpressions(inferer);
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void resolveWaves(ExecutorService executor, ResolutionSchedule schedule, 
+			BiConsumer<Inferer, FileEntity> resolver) throws InterruptedException, ExecutionException {
+		for (List<FileEntity> wave:schedule.getWaves()) {
+			AtomicInteger nextFile = new AtomicInteger();
+			List<Future<Inferer>> workerInferers = new ArrayList<>();
+			for (int i=0;i<Math.min(resolverThreads, wave.size());i++) {
+				workerInferers.add(executor.submit(()->{
+					Inferer inferer = withRepo(repo);
+					inferer.setNameCacheSize(nameCache.maxSize);
+					inferer.functionNameIndex = functionNameIndex;
+					for (int file=nextFile.getAndIncrement();file<wave.size();file=nextFile.getAndIncrement()) {
+						resolver.accept(inferer, wave.get(file));
+					}
+					return inferer;
+				}));
+			}
+			for (Future<Inferer> workerInferer:workerInferers) {
+				nameCacheHits += workerInferer.get().nameCacheHits;
+				nameCacheMisses += workerInferer.get().nameCacheMisses;
+			}
+		}
+	}
 	
 	/**
 	 * For types start with the prefix, it will be treated as built-in type
@@ -92,6 +193,15 @@ public class Inferer {
 	public boolean isBuiltInTypePrefix(String prefix) {
 		return buildInTypeManager.isBuiltInTypePrefix(prefix);
 	}
+
+	/**
+	 * Treat the types start with the prefixes as built-in types too, 
+	 * for example, the packages of internal frameworks
+	 * @param prefixes
+	 */
+	public void addBuiltInPrefixes(String... prefixes) {
+		buildInTypeManager.addBuiltInPrefixes(prefixes);
+	}
 	
 	/**
 	 * Different languages have different strategy on how to compute the imported types
@@ -137,7 +247,22 @@ public class Inferer {
 	 * @return
 	 */
 	public Entity resolveName(Entity fromEntity, String rawName, boolean searchImport) {
-		Entity entity = resolveNameInternal(fromEntity,rawName,searchImport);
+		/* the symbol is only used for the names without '.' */
+		int symbol = (rawName==null || rawName.indexOf('.')>=0)?SymbolTable.NO_SYMBOL:repo.getSymbols().lookup(rawName);
+		return resolveName(fromEntity, rawName, symbol, searchImport);
+	}
+
+	/**
+	 * By given raw name and its symbol id (e.g. of expressions, which are interned once), 
+	 * to infer the entity of the name
+	 * @param fromEntity
+	 * @param rawName
+	 * @param symbol - the symbol id of rawName; it is only used if rawName is a name without '.'
+	 * @param searchImport
+	 * @return
+	 */
+	public Entity resolveName(Entity fromEntity, String rawName, int symbol, boolean searchImport) {
+		Entity entity = resolveNameInternal(fromEntity,rawName,symbol,searchImport);
 		if (logger.isDebugEnabled()) {
 			logger.debug("resolve name " + rawName + " from " + fromEntity.getQualifiedName() +" ==> "
 						+ (entity==null?"null":entity.getQualifiedName()));
@@ -145,42 +270,48 @@ public class Inferer {
 		return entity;
 	}
 
-	private Entity resolveNameInternal(Entity fromEntity, String rawName, boolean searchImport) {
+	private Entity resolveNameInternal(Entity fromEntity, String rawName, int symbol, boolean searchImport) {
 		if (rawName == null)
 			return null;
-		if (buildInTypeManager.isBuiltInType(rawName)) {
-			return buildInType;
-		}
-		if (buildInTypeManager.isBuiltInTypePrefix(rawName)) {
+		if (buildInTypeManager.isBuiltInTypeOrPrefix(rawName)) {
 			return buildInType;
 		}
 		// qualified name will first try global name directly
 		if (rawName.startsWith(".")) {
 			rawName = rawName.substring(1);
-			if (repo.getEntity(rawName) != null)
-				return repo.getEntity(rawName);
-		}
-		
-		if (rawName.contains(".")) {
-			if (repo.getEntity(rawName) != null)
-				return repo.getEntity(rawName);
+			symbol = repo.getSymbols().lookup(rawName);
+			Entity entity = repo.getEntity(rawName);
+			if (entity != null)
+				return entity;
+		}else if (rawName.indexOf('.')>=0) {
+			Entity entity = repo.getEntity(rawName);
+			if (entity != null)
+				return entity;
 		}
-		// first we lookup the first symbol
-		String[] names = rawName.split("\\.");
-		if (names.length == 0)
+		// the trailing empty symbols are ignored
+		int end = rawName.length();
+		while (end>0 && rawName.charAt(end-1)=='.')
+			end--;
+		if (end==0 && !rawName.isEmpty())
 			return null;
-		Entity entity = lookupEntity(fromEntity, names[0], searchImport);
+		// first we lookup the first symbol
+		int firstEnd = rawName.indexOf('.');
+		if (firstEnd>end)
+			firstEnd = end;
+		String firstName = (firstEnd<0)?rawName:rawName.substring(0, firstEnd);
+		int firstSymbol = (firstEnd<0)?symbol:repo.getSymbols().lookup(firstName);
+		Entity entity = lookupEntity(fromEntity, firstName, firstSymbol, searchImport);
 		if (entity == null) {
 			return null;
 		}
-		if (names.length == 1) {
+		if (firstEnd<0 || firstEnd==end) {
 			return entity;
 		}
 		// then find the subsequent symbols
-		return findEntitySince(entity, names, 1);
+		return findEntitySince(entity, rawName, firstEnd+1, end);
 	}
 	
-	private Entity lookupEntity(Entity fromEntity, String name, boolean searcImport) {
+	private Entity lookupEntity(Entity fromEntity, String name, int symbol, boolean searcImport) {
 		if (name.equals("this") || name.equals("class")) {
 			TypeEntity entityType = (TypeEntity) (fromEntity.getAncestorOfType(TypeEntity.class));
 			return entityType;
@@ -191,9 +322,37 @@ public class Inferer {
 				if (parentType!=null) 
 					return parentType;
 			}
+			return lookupEntityInScope(fromEntity, name, symbol, searcImport);
 		}
 
-		Entity inferData = findEntityUnderSamePackage(fromEntity, name);
+		/* names declared in functions and vars are looked up directly; they are cheap and 
+		 * the scopes are too many to be cached. The lookup from the enclosing scope is cached. */
+		while (fromEntity instanceof FunctionEntity || fromEntity instanceof VarEntity) {
+			Entity entity = tryToFindEntityWithName(fromEntity, symbol);
+			if (entity != null)
+				return entity;
+			entity = findEntityInChild(fromEntity,symbol);
+			if (entity!=null) return entity;
+			fromEntity = fromEntity.getParent();
+			if (fromEntity==null)
+				return null;
+		}
+		if (nameCache.maxSize==0)
+			return lookupEntityInScope(fromEntity, name, symbol, searcImport);
+		ScopedName key = new ScopedName(fromEntity, name, searcImport, nameCacheEpoch);
+		Object cached = nameCache.get(key);
+		if (cached!=null) {
+			nameCacheHits++;
+			return cached==NOT_FOUND?null:(Entity)cached;
+		}
+		nameCacheMisses++;
+		Entity entity = lookupEntityInScope(fromEntity, name, symbol, searcImport);
+		nameCache.put(key, entity==null?NOT_FOUND:entity);
+		return entity;
+	}
+
+	private Entity lookupEntityInScope(Entity fromEntity, String name, int symbol, boolean searcImport) {
+		Entity inferData = findEntityUnderSamePackage(fromEntity, name, symbol);
 		if (inferData != null) {
 			return inferData;
 		}
@@ -202,26 +361,36 @@ public class Inferer {
 		return inferData;
 	}
 	/**
-	 * To lookup entity in case of a.b.c from a;
+	 * To lookup entity in case of a.b.c from a; 
+	 * the symbols are compared in place without splitting the name
 	 * @param precendenceEntity
-	 * @param names
-	 * @param nameIndex
+	 * @param qualifiedName
+	 * @param segmentStart - the start of the next symbol
+	 * @param end - the end of the last symbol
 	 * @return
 	 */
-	private Entity findEntitySince(Entity precendenceEntity, String[] names, int nameIndex) {
-		if (nameIndex >= names.length) {
-			return precendenceEntity;
-		}
-		//If it is not an entity with types (not a type, var, function), fall back to itself
-		if (precendenceEntity.getType()==null) 
-			return precendenceEntity;
-		
-		for (Entity child : precendenceEntity.getType().getChildren()) {
-			if (child.getRawName().equals(names[nameIndex])) {
-				return findEntitySince(child, names, nameIndex + 1);
+	private Entity findEntitySince(Entity precendenceEntity, String qualifiedName, int segmentStart, int end) {
+		while (true) {
+			//If it is not an entity with types (not a type, var, function), fall back to itself
+			if (precendenceEntity.getType()==null) 
+				return precendenceEntity;
+			int segmentEnd = qualifiedName.indexOf('.', segmentStart);
+			if (segmentEnd<0 || segmentEnd>end)
+				segmentEnd = end;
+			int segmentLength = segmentEnd - segmentStart;
+			Entity found = null;
+			for (Entity child : precendenceEntity.getType().getChildren()) {
+				String childName = child.getRawName();
+				if (childName.length()==segmentLength && childName.regionMatches(0, qualifiedName, segmentStart, segmentLength)) {
+					found = child;
+					break;
+				}
 			}
+			if (found==null || segmentEnd==end)
+				return found;
+			precendenceEntity = found;
+			segmentStart = segmentEnd + 1;
 		}
-		return null;
 	}
 
 	private Entity lookupTypeInImported(FileEntity fileEntity, String name) {
@@ -239,14 +408,15 @@ public class Inferer {
 	 * the entity lookup is implemented recursively.
 	 * @param fromEntity
 	 * @param name
+	 * @param symbol - the symbol id of name
 	 * @return
 	 */
-	private Entity findEntityUnderSamePackage(Entity fromEntity, String name) {
+	private Entity findEntityUnderSamePackage(Entity fromEntity, String name, int symbol) {
 		while (true) {
-			Entity entity = tryToFindEntityWithName(fromEntity, name);
+			Entity entity = tryToFindEntityWithName(fromEntity, symbol);
 			if (entity != null)
 				return entity;
-			entity = findEntityInChild(fromEntity,name);
+			entity = findEntityInChild(fromEntity,symbol);
 			if (entity!=null) return entity;
 			
 			if (fromEntity instanceof TypeEntity) {
@@ -254,7 +424,7 @@ public class Inferer {
 				while(true) {
 					if (type.getInheritedTypes().size()==0) break;
 					for (TypeEntity child:type.getInheritedTypes()) {
-						entity = findEntityInChild(child,name);
+						entity = findEntityInChild(child,symbol);
 						if (entity!=null) return entity;
 						type = child;
 					}
@@ -262,7 +432,7 @@ public class Inferer {
 				while(true) {
 					if (type.getImplementedTypes().size()==0) break;
 					for (TypeEntity child:type.getImplementedTypes()) {
-						entity = findEntityInChild(child,name);
+						entity = findEntityInChild(child,symbol);
 						if (entity!=null) return entity;
 						type = child;
 					}
@@ -270,21 +440,23 @@ public class Inferer {
 			}
 			
 			if (fromEntity instanceof FileEntity) {
-				FileEntity file = (FileEntity)fromEntity;
-				for (TypeEntity type:file.getDeclaredTypes()) {
-					if (type.getRawName().equals(name)||
-						suffixMatch(name,type.getQualifiedName())) {
-						return type;
-					}
-				}
+				TypeEntity type = ((FileEntity)fromEntity).lookupDeclaredType(name);
+				if (type!=null)
+					return type;
 			}
 			
-			for (Entity child : fromEntity.getChildren()) {
-				if (child instanceof FileEntity) {
-					for (Entity classUnderFile : child.getChildren()) {
-						entity = tryToFindEntityWithName(classUnderFile, name);
-						if (entity != null)
-							return entity;
+			if (fromEntity instanceof PackageEntity) {
+				entity = ((PackageEntity)fromEntity).lookupFileLevelEntity(name);
+				if (entity != null)
+					return tryToFindEntityWithName(entity, symbol);
+			}else {
+				for (Entity child : fromEntity.getChildren()) {
+					if (child instanceof FileEntity) {
+						for (Entity classUnderFile : child.getChildren()) {
+							entity = tryToFindEntityWithName(classUnderFile, symbol);
+							if (entity != null)
+								return entity;
+						}
 					}
 				}
 			}
@@ -294,22 +466,11 @@ public class Inferer {
 		}
 		return null;
 	}
-	
-	
-	private boolean suffixMatch(String name, String qualifiedName) {
-		if (qualifiedName.contains(".")) {
-			if (!name.startsWith(".")) name = "." +name;
-			return qualifiedName.endsWith(name);
-		}
-		else {
-			return qualifiedName.equals(name);
-		}
-	}
 
-	private Entity findEntityInChild(Entity fromEntity,String name) {
+	private Entity findEntityInChild(Entity fromEntity,int symbol) {
 		Entity entity =null;
 		for (Entity child : fromEntity.getChildren()) {
-			entity = tryToFindEntityWithName(child, name);
+			entity = tryToFindEntityWithName(child, symbol);
 			if (entity != null)
 				return entity;
 		}
@@ -318,28 +479,29 @@ public class Inferer {
 	
 	/**
 	 * Only used by findEntityUnderSamePackage
+	 * The names are compared by symbol ids; a name never interned (NO_SYMBOL) matches nothing 
 	 * @param fromEntity
-	 * @param name
+	 * @param symbol - the symbol id of name
 	 * @return
 	 */
-	private Entity tryToFindEntityWithName(Entity fromEntity, String name) {
+	private Entity tryToFindEntityWithName(Entity fromEntity, int symbol) {
 		if (fromEntity instanceof CandidateTypes) {
 			for (TypeEntity type:((CandidateTypes)fromEntity).getCandidateTypes()) {
-				Entity e = tryToFindEntityWithNameSureSingleEntity(type,name);
+				Entity e = tryToFindEntityWithNameSureSingleEntity(type,symbol);
 				if (e !=null) return e;
 			}
 			return null;
 		}
 		else 
-			return tryToFindEntityWithNameSureSingleEntity(fromEntity,name);
+			return tryToFindEntityWithNameSureSingleEntity(fromEntity,symbol);
 	}
 	
-	private Entity tryToFindEntityWithNameSureSingleEntity(Entity fromEntity, String name) {
-		if (!fromEntity.getRawName().equals(name))
+	private Entity tryToFindEntityWithNameSureSingleEntity(Entity fromEntity, int symbol) {
+		if (symbol==SymbolTable.NO_SYMBOL || fromEntity.getRawNameSymbol()!=symbol)
 			return null;
 		if (fromEntity instanceof MultiDeclareEntities) {
 			for (Entity declaredEntitiy : ((MultiDeclareEntities) fromEntity).getEntities()) {
-				if (declaredEntitiy.getRawName().equals(name) && declaredEntitiy instanceof TypeEntity) {
+				if (declaredEntitiy.getRawNameSymbol()==symbol && declaredEntitiy instanceof TypeEntity) {
 					return declaredEntitiy;
 				}
 			}
@@ -355,29 +517,120 @@ public class Inferer {
 	 * @return
 	 */
 	public List<TypeEntity> calculateCandidateTypes(VarEntity fromEntity, List<FunctionCall> functionCalls) {
-		List<TypeEntity> types = new ArrayList<>();
 		FileEntity file = (FileEntity) fromEntity.getAncestorOfType(FileEntity.class);
-		searchAllTypesUnder(types,file, functionCalls);
-		return types;
-	}
-
-	private void searchAllTypesUnder(List<TypeEntity> types, FileEntity file, List<FunctionCall> functionCalls) {
 		if (file==null) {
 			System.err.println("file  should not been null");
-			return;
+			return new ArrayList<>();
 		}
-		Set<FileEntity> files = file.getImportedFilesInAllLevel();
-		for(FileEntity f:files) {
-			for (TypeEntity type:f.getDeclaredTypes()) {
-				FunctionMatcher functionMatcher = new FunctionMatcher(type.getFunctions());
-				if (functionMatcher.containsAll(functionCalls)) {
-					types.add(type);
+		return functionNameIndex().typesWithAll(functionCalls, file.getImportedFilesInAllLevel());
+	}
+
+	/**
+	 * The index is built on first use, after all files are parsed. 
+	 * It is shared by the inferers of resolver threads.
+	 */
+	private FunctionNameIndex functionNameIndex() {
+		FunctionNameIndex index = functionNameIndex.get();
+		if (index==null) {
+			synchronized (functionNameIndex) {
+				index = functionNameIndex.get();
+				if (index==null) {
+					index = new FunctionNameIndex(repo.getEntities());
+					functionNameIndex.set(index);
 				}
 			}
 		}
+		return index;
 	}
 
 	public boolean isEagerExpressionResolve() {
 		return eagerExpressionResolve;
 	}
+
+	/**
+	 * Should be invoked when the resolved inherited/implemented types or imports of entities changed,
+	 * because they affect the result of name resolution
+	 */
+	public void invalidateNameCache() {
+		nameCacheEpoch++;
+	}
+
+	/**
+	 * Set the max number of names kept in the name resolution cache. 0 to disable the cache.
+	 * @param maxSize
+	 */
+	public void setNameCacheSize(int maxSize) {
+		nameCache = new NameCache(maxSize);
+	}
+
+	/**
+	 * Set the number of threads used to resolve bindings. By default files are resolved 
+	 * one by one in the current thread.
+	 * @param resolverThreads
+	 */
+	public void setResolverThreads(int resolverThreads) {
+		this.resolverThreads = resolverThreads;
+	}
+
+	public int getResolverThreads() {
+		return resolverThreads;
+	}
+
+	public long getNameCacheHits() {
+		return nameCacheHits;
+	}
+
+	public long getNameCacheMisses() {
+		return nameCacheMisses;
+	}
+
+	/**
+	 * The name looked up from a scope
+	 */
+	private static class ScopedName {
+		final Entity scope;
+		final String name;
+		final boolean searchImport;
+		final int epoch;
+		final int hash;
+
+		ScopedName(Entity scope, String name, boolean searchImport, int epoch) {
+			this.scope = scope;
+			this.name = name;
+			this.searchImport = searchImport;
+			this.epoch = epoch;
+			this.hash = (System.identityHashCode(scope)*31 + name.hashCode())*31 + epoch*2 + (searchImport?1:0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ScopedName)) return false;
+			ScopedName other = (ScopedName)obj;
+			return scope==other.scope && epoch==other.epoch 
+					&& searchImport==other.searchImport && name.equals(other.name);
+		}
+	}
+
+	/**
+	 * LRU cache of resolved names. Names could not be resolved are kept as NOT_FOUND.
+	 */
+	@SuppressWarnings("serial")
+	private static class NameCache extends LinkedHashMap<ScopedName, Object> {
+		final int maxSize;
+
+		NameCache(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ScopedName, Object> eldest) {
+			return size() > maxSize;
+		}
+	}
 }
@@ -34,12 +34,18 @@ import java.util.List;
 public class RelationCounter {
 
 	private Collection<Entity> entities;
+	private RelationStore.Builder relations;
 
 	public RelationCounter(Collection<Entity> entities) {
 		this.entities = entities;
 	}
 	
-	public void computeRelations() {
+	/**
+	 * Compute the relations of all entities into a relation store
+	 * @return the store, which the entities read their relations from
+	 */
+	public RelationStore computeRelations() {
+		relations = new RelationStore.Builder();
 		for (Entity entity:entities) {
 			if (entity instanceof FileEntity) {
 				computeImports((FileEntity)entity);
@@ -54,29 +60,30 @@ public class RelationCounter {
 				computeContainerRelations((ContainerEntity)entity);
 			}
 		}
+		return relations.build();
 	}
 
 	
 	private void computeContainerRelations(ContainerEntity entity) {
 		for (VarEntity var:entity.getVars()) {
 			if (var.getType()!=null)
-				entity.addRelation(new Relation(DependencyType.CONTAIN,var.getType()));
+				relations.add(entity, DependencyType.CONTAIN, var.getType());
 			for (TypeEntity type:var.getResolvedTypeParameters()) {
-				entity.addRelation(new Relation(DependencyType.USE,type));
+				relations.add(entity, DependencyType.USE, type);
 			}
 		}
 		for (TypeEntity type:entity.getResolvedAnnotations()) {
-			entity.addRelation(new Relation(DependencyType.USE,type));
+			relations.add(entity, DependencyType.USE, type);
 		}
 		for (TypeEntity type:entity.getResolvedTypeParameters()) {
-			entity.addRelation(new Relation(DependencyType.USE,type));
+			relations.add(entity, DependencyType.USE, type);
 		}
 		for (ContainerEntity mixin:entity.getResolvedMixins()) {
-			entity.addRelation(new Relation(DependencyType.MIXIN,mixin));
+			relations.add(entity, DependencyType.MIXIN, mixin);
 		}
 		
 		HashSet<Entity> usedEntities = new HashSet<>();
-		for (Expression expression:entity.expressions().values()){
+		for (Expression expression:entity.expressions()){
 			if (expression.isStatement) {
 				continue;
 			}
@@ -85,19 +92,19 @@ public class RelationCounter {
 				continue;
 			}
 			if (expression.isCall) {
-				entity.addRelation(new Relation(DependencyType.CALL,referredEntity));
+				relations.add(entity, DependencyType.CALL, referredEntity);
 			}
 			if (expression.isCreate) {
-				entity.addRelation(new Relation(DependencyType.CREATE,referredEntity));
+				relations.add(entity, DependencyType.CREATE, referredEntity);
 			}
 			if (expression.isThrow) {
-				entity.addRelation(new Relation(DependencyType.THROW,referredEntity));
+				relations.add(entity, DependencyType.THROW, referredEntity);
 			}
 			if (expression.isSet) { //SET is merged with USE
-				entity.addRelation(new Relation(DependencyType.USE,referredEntity));
+				relations.add(entity, DependencyType.USE, referredEntity);
 			}
 			if (expression.isCast) { 
-				entity.addRelation(new Relation(DependencyType.CAST,referredEntity));
+				relations.add(entity, DependencyType.CAST, referredEntity);
 			}
 			if (!expression.isCall && !expression.isCreate && !expression.isCast) {
 				usedEntities.add(expression.getReferredEntity());
@@ -105,29 +112,29 @@ public class RelationCounter {
 		}
 		
 		for (Entity usedEntity:usedEntities) {
-			entity.addRelation(new Relation(DependencyType.USE,usedEntity));
+			relations.add(entity, DependencyType.USE, usedEntity);
 		}
 	}
 
 	private void computeTypeRelations(TypeEntity type) {
 		for (TypeEntity superType:type.getInheritedTypes()) {
-			type.addRelation(new Relation(DependencyType.INHERIT,superType));
+			relations.add(type, DependencyType.INHERIT, superType);
 		}
 		for (TypeEntity interfaceType:type.getImplementedTypes()) {
-			type.addRelation(new Relation(DependencyType.IMPLEMENT,interfaceType));
+			relations.add(type, DependencyType.IMPLEMENT, interfaceType);
 		}
 	}
 
 	private void computeFunctionRelations(FunctionEntity func) {
 		for (TypeEntity returnType:func.getReturnTypes()) {
-			func.addRelation(new Relation(DependencyType.RETURN,returnType));
+			relations.add(func, DependencyType.RETURN, returnType);
 		}
 		for (VarEntity parameter:func.getParameters()) {
 			if (parameter.getType()!=null) 
-				func.addRelation(new Relation(DependencyType.PARAMETER,parameter.getType()));
+				relations.add(func, DependencyType.PARAMETER, parameter.getType());
 		}
 		for (TypeEntity throwType:func.getThrowTypes()) {
-			func.addRelation(new Relation(DependencyType.THROW,throwType));
+			relations.add(func, DependencyType.THROW, throwType);
 		}
 	}
 
@@ -137,9 +144,9 @@ public class RelationCounter {
 			if (imported instanceof FileEntity)
 			{
 				if (((FileEntity)imported).isInProjectScope())
-					file.addRelation(new Relation(DependencyType.IMPORT,imported));
+					relations.add(file, DependencyType.IMPORT, imported);
 			}else {
-				file.addRelation(new Relation(DependencyType.IMPORT,imported));
+				relations.add(file, DependencyType.IMPORT, imported);
 			}
 		}
 	}
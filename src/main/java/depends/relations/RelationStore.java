@@ -0,0 +1,321 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.relations;
+
+import depends.deptypes.DependencyType;
+import depends.entity.CandidateTypes;
+import depends.entity.Entity;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * RelationStore keeps the relations of all entities in compressed sparse row form.
+ * Each entity is a node (its id if possible); the relations of a node are a range of 
+ * the target and type arrays, and the incoming relations of a node are a range of the 
+ * reverse index. The store is built once after the relations are computed, and is not 
+ * changed afterwards. 
+ * Entity.getRelations() of the sources are views of the store.
+ */
+public class RelationStore {
+	private static final String[] TYPES = DependencyType.allDependencies().toArray(new String[0]);
+	private static final HashMap<String, Byte> TYPE_CODES = new HashMap<>();
+	static {
+		for (byte code=0;code<TYPES.length;code++) {
+			TYPE_CODES.put(TYPES[code], code);
+		}
+	}
+
+	private final Entity[] nodes;
+	private final int idNodeCount;
+	/* nodes which are not indexed by id, e.g. built-in types and candidate types */
+	private final IdentityHashMap<Entity, Integer> extraNodes;
+	private final int[] offsets;
+	private final int[] targets;
+	private final byte[] types;
+	private final int[] incomingOffsets;
+	private final int[] incomingSources;
+	private final byte[] incomingTypes;
+
+	private RelationStore(Entity[] nodes, int idNodeCount, IdentityHashMap<Entity, Integer> extraNodes, 
+			int[] sources, int[] targets, byte[] types, int relationCount) {
+		this.nodes = nodes;
+		this.idNodeCount = idNodeCount;
+		this.extraNodes = extraNodes;
+		this.offsets = new int[nodes.length+1];
+		this.targets = new int[relationCount];
+		this.types = new byte[relationCount];
+		this.incomingOffsets = new int[nodes.length+1];
+		this.incomingSources = new int[relationCount];
+		this.incomingTypes = new byte[relationCount];
+		/* counting sort by source and by target; both are stable, so the relations of 
+		 * a node are kept in the order of being added */
+		for (int i=0;i<relationCount;i++) {
+			offsets[sources[i]+1]++;
+			incomingOffsets[targets[i]+1]++;
+		}
+		for (int node=0;node<nodes.length;node++) {
+			offsets[node+1] += offsets[node];
+			incomingOffsets[node+1] += incomingOffsets[node];
+		}
+		int[] next = Arrays.copyOf(offsets, nodes.length);
+		int[] nextIncoming = Arrays.copyOf(incomingOffsets, nodes.length);
+		for (int i=0;i<relationCount;i++) {
+			int position = next[sources[i]]++;
+			this.targets[position] = targets[i];
+			this.types[position] = types[i];
+			int incomingPosition = nextIncoming[targets[i]]++;
+			this.incomingSources[incomingPosition] = sources[i];
+			this.incomingTypes[incomingPosition] = types[i];
+		}
+	}
+
+	/**
+	 * The code of dependency type, see {@link DependencyType}
+	 */
+	public static byte typeCodeOf(String type) {
+		Byte code = TYPE_CODES.get(type);
+		if (code==null)
+			throw new IllegalArgumentException("unknown relation type " + type);
+		return code;
+	}
+
+	public static String typeOf(byte typeCode) {
+		return TYPES[typeCode];
+	}
+
+	public static int getTypeCount() {
+		return TYPES.length;
+	}
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	/**
+	 * The nodes in [0, getIdNodeCount()) are the entities of the same id (or null if 
+	 * no such entity in relations); the nodes after them are entities without id, 
+	 * like built-in types and candidate types.
+	 */
+	public int getIdNodeCount() {
+		return idNodeCount;
+	}
+
+	public int getRelationCount() {
+		return targets.length;
+	}
+
+	public Entity getEntity(int node) {
+		return nodes[node];
+	}
+
+	/**
+	 * The node of the entity
+	 * @return -1 if the entity is neither source nor target of relations
+	 */
+	public int nodeOf(Entity entity) {
+		if (!(entity instanceof CandidateTypes)) {
+			int id = entity.getId();
+			if (id>=0 && id<nodes.length && nodes[id]==entity)
+				return id;
+		}
+		Integer node = extraNodes.get(entity);
+		return node==null?-1:node;
+	}
+
+	/**
+	 * The relations of node are in [getRelationStart(node), getRelationEnd(node))
+	 */
+	public int getRelationStart(int node) {
+		return offsets[node];
+	}
+
+	public int getRelationEnd(int node) {
+		return offsets[node+1];
+	}
+
+	/**
+	 * The target node of the relation
+	 */
+	public int getTarget(int relation) {
+		return targets[relation];
+	}
+
+	public byte getTypeCode(int relation) {
+		return types[relation];
+	}
+
+	/**
+	 * The incoming relations of node are in [getIncomingStart(node), getIncomingEnd(node))
+	 */
+	public int getIncomingStart(int node) {
+		return incomingOffsets[node];
+	}
+
+	public int getIncomingEnd(int node) {
+		return incomingOffsets[node+1];
+	}
+
+	/**
+	 * The source node of the incoming relation
+	 */
+	public int getIncomingSource(int incoming) {
+		return incomingSources[incoming];
+	}
+
+	public byte getIncomingTypeCode(int incoming) {
+		return incomingTypes[incoming];
+	}
+
+	/**
+	 * The relations from the entity
+	 */
+	public List<Relation> getRelations(Entity entity) {
+		int node = nodeOf(entity);
+		if (node<0 || offsets[node]==offsets[node+1])
+			return Collections.emptyList();
+		return new Relations(node);
+	}
+
+	/**
+	 * The relations to the entity; the entity of each relation is the source
+	 */
+	public List<Relation> getIncomingRelations(Entity entity) {
+		List<Relation> relations = new ArrayList<>();
+		int node = nodeOf(entity);
+		if (node<0) 
+			return relations;
+		for (int i=incomingOffsets[node];i<incomingOffsets[node+1];i++) {
+			relations.add(new Relation(TYPES[incomingTypes[i]], nodes[incomingSources[i]]));
+		}
+		return relations;
+	}
+
+	/**
+	 * The relations of a node, which are created on demand
+	 */
+	public class Relations extends AbstractList<Relation> {
+		private final int node;
+
+		Relations(int node) {
+			this.node = node;
+		}
+
+		@Override
+		public Relation get(int index) {
+			if (index<0 || index>=size())
+				throw new IndexOutOfBoundsException("index " + index);
+			int relation = offsets[node] + index;
+			return new Relation(TYPES[types[relation]], nodes[targets[relation]]);
+		}
+
+		@Override
+		public int size() {
+			return offsets[node+1] - offsets[node];
+		}
+	}
+
+	/**
+	 * Collects the relations, and builds the store in one pass
+	 */
+	public static class Builder {
+		private Entity[] entitiesById = new Entity[1024];
+		private int idCount = 0;
+		private IdentityHashMap<Entity, Integer> extraNodes = new IdentityHashMap<>();
+		private List<Entity> extraEntities = new ArrayList<>();
+		/* the extra nodes are encoded as negative numbers until all ids are known */
+		private int[] sources = new int[1024];
+		private int[] targets = new int[1024];
+		private byte[] types = new byte[1024];
+		private int relationCount = 0;
+
+		public void add(Entity source, String type, Entity target) {
+			add(source, typeCodeOf(type), target);
+		}
+
+		public void add(Entity source, byte typeCode, Entity target) {
+			if (relationCount==sources.length) {
+				int capacity = relationCount*2;
+				sources = Arrays.copyOf(sources, capacity);
+				targets = Arrays.copyOf(targets, capacity);
+				types = Arrays.copyOf(types, capacity);
+			}
+			sources[relationCount] = nodeOf(source);
+			targets[relationCount] = nodeOf(target);
+			types[relationCount] = typeCode;
+			relationCount++;
+		}
+
+		private int nodeOf(Entity entity) {
+			if (!(entity instanceof CandidateTypes)) {
+				int id = entity.getId();
+				if (id>=0) {
+					if (id>=entitiesById.length)
+						entitiesById = Arrays.copyOf(entitiesById, Math.max(id+1, entitiesById.length*2));
+					if (entitiesById[id]==null) {
+						entitiesById[id] = entity;
+						idCount = Math.max(idCount, id+1);
+					}
+					if (entitiesById[id]==entity)
+						return id;
+				}
+			}
+			Integer extra = extraNodes.get(entity);
+			if (extra==null) {
+				extra = extraEntities.size();
+				extraNodes.put(entity, extra);
+				extraEntities.add(entity);
+			}
+			return -extra-1;
+		}
+
+		/**
+		 * Build the store, and let the sources read their relations from the store
+		 */
+		public RelationStore build() {
+			Entity[] nodes = Arrays.copyOf(entitiesById, idCount + extraEntities.size());
+			IdentityHashMap<Entity, Integer> extras = new IdentityHashMap<>();
+			for (int i=0;i<extraEntities.size();i++) {
+				nodes[idCount+i] = extraEntities.get(i);
+				extras.put(extraEntities.get(i), idCount+i);
+			}
+			for (int i=0;i<relationCount;i++) {
+				if (sources[i]<0) sources[i] = idCount - sources[i] - 1;
+				if (targets[i]<0) targets[i] = idCount - targets[i] - 1;
+			}
+			RelationStore store = new RelationStore(nodes, idCount, extras, sources, targets, types, relationCount);
+			for (int node=0;node<nodes.length;node++) {
+				if (store.offsets[node]<store.offsets[node+1])
+					nodes[node].setRelations(store.new Relations(node));
+			}
+			return store;
+		}
+	}
+}
@@ -0,0 +1,439 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.relations;
+
+import depends.entity.AliasEntity;
+import depends.entity.ContainerEntity;
+import depends.entity.DecoratedEntity;
+import depends.entity.Entity;
+import depends.entity.Expression;
+import depends.entity.FileEntity;
+import depends.entity.FunctionEntity;
+import depends.entity.MultiDeclareEntities;
+import depends.entity.PackageEntity;
+import depends.entity.TypeEntity;
+import depends.entity.VarEntity;
+import depends.entity.repo.EntityRepo;
+import depends.importtypes.Import;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ResolutionSchedule groups the files into waves for parallel resolution.
+ * 
+ * Resolving a file reads the resolved data (e.g. inherited types, var types) of the files 
+ * it references: imported files, files declaring the qualified names or the multi-declarations,
+ * and files declaring a file level entity named by the first symbol of its names, because a name 
+ * could be looked up in the package of any type it refers to; and transitively, the files 
+ * referenced by them. 
+ * Two files are dependent if one of them reaches the other, and dependent files must be resolved 
+ * in the order of the sequential resolution, so the results are the same. Files are visited in order, 
+ * and each file is put into the wave after the waves of the earlier dependent files (the longest path).
+ * Files of the same wave are independent, and could be resolved concurrently.
+ * The files reachable from a component of the reference graph are kept as ranges of file indexes; 
+ * they are few because the files of a directory are adjacent.
+ */
+class ResolutionSchedule {
+	private final EntityRepo repo;
+	private final Inferer inferer;
+	private final List<FileEntity> files = new ArrayList<>();
+	private final IdentityHashMap<Entity, Integer> fileNodes = new IdentityHashMap<>();
+	private final HashMap<String, List<Integer>> fileNodesOfName = new HashMap<>();
+	private final IdentityHashMap<FileEntity, List<ContainerEntity>> containersOfFile = new IdentityHashMap<>();
+	private final List<ContainerEntity> leadingContainers = new ArrayList<>();
+	private final List<List<FileEntity>> waves = new ArrayList<>();
+
+	ResolutionSchedule(EntityRepo repo, Inferer inferer) {
+		this.repo = repo;
+		this.inferer = inferer;
+		FileEntity currentFile = null;
+		for (Entity entity:repo.getEntities()) {
+			if (entity instanceof FileEntity) {
+				currentFile = (FileEntity)entity;
+				fileNodes.put(currentFile, files.size());
+				files.add(currentFile);
+				containersOfFile.put(currentFile, new ArrayList<>());
+			}
+			if (!(entity instanceof ContainerEntity)) continue;
+			if (currentFile==null)
+				leadingContainers.add((ContainerEntity)entity);
+			else
+				containersOfFile.get(currentFile).add((ContainerEntity)entity);
+		}
+		int[][] graph = buildReferenceGraph();
+		int[] componentOf = new int[graph.length];
+		int componentCount = findStronglyConnectedComponents(graph, componentOf);
+		int[][] reach = computeReach(graph, componentOf, componentCount);
+		assignWaves(componentOf, reach);
+	}
+
+	/**
+	 * The waves to be resolved one after another; each wave is a list of independent files 
+	 * in the original order.
+	 */
+	List<List<FileEntity>> getWaves() {
+		return waves;
+	}
+
+	/**
+	 * The containers (file itself, types, functions etc.) registered with the file, in the order of repo
+	 */
+	List<ContainerEntity> getContainersOf(FileEntity file) {
+		return containersOfFile.get(file);
+	}
+
+	/**
+	 * The containers registered before any file; they are resolved before all waves
+	 */
+	List<ContainerEntity> getLeadingContainers() {
+		return leadingContainers;
+	}
+
+	/**
+	 * The nodes are files
+	 */
+	private int[][] buildReferenceGraph() {
+		for (int node=0;node<files.size();node++) {
+			for (Entity child:files.get(node).getChildren()) {
+				if (child.getRawName()==null) continue;
+				fileNodesOfName.computeIfAbsent(child.getRawName(), k->new ArrayList<>(1)).add(node);
+			}
+		}
+		int[][] graph = new int[files.size()][];
+		for (int node=0;node<files.size();node++) {
+			FileEntity file = files.get(node);
+			Set<Integer> nodes = new HashSet<>();
+			Set<String> checkedNames = new HashSet<>();
+			List<Import> importedNames = file.getImportedNames();
+			for (Import imported:importedNames) {
+				addReferencedNodes(repo.getEntity(imported.getContent()), nodes);
+			}
+			addReferencedNodes(inferer.getImportedRelationEntities(importedNames), nodes);
+			addReferencedNodes(inferer.getImportedTypes(importedNames), nodes);
+			addReferencedNodes(inferer.getImportedFiles(importedNames), nodes);
+			addNodesOfSubtree(file, nodes, checkedNames, Collections.newSetFromMap(new IdentityHashMap<>()));
+			nodes.remove(node);
+			graph[node] = toArray(nodes);
+		}
+		return graph;
+	}
+
+	private void addNodesOfSubtree(Entity entity, Set<Integer> nodes, Set<String> checkedNames, Set<Entity> visited) {
+		if (!visited.add(entity)) return;
+		addReferencedNodes(entity.getMutliDeclare(), nodes);
+		if (entity instanceof MultiDeclareEntities)
+			addReferencedNodes(entity, nodes);
+		if (entity instanceof AliasEntity)
+			addNodesOfName(((AliasEntity) entity).getOriginName(), nodes, checkedNames);
+		if (entity instanceof DecoratedEntity) {
+			addNodesOfNames(((DecoratedEntity) entity).getTypeParameters(), nodes, checkedNames);
+			addNodesOfNames(((DecoratedEntity) entity).getAnnotations(), nodes, checkedNames);
+		}
+		if (entity instanceof ContainerEntity) {
+			ContainerEntity container = (ContainerEntity)entity;
+			addNodesOfNames(container.getMixins(), nodes, checkedNames);
+			for (Expression expression:container.expressions()) {
+				addNodesOfName(expression.rawType, nodes, checkedNames);
+				addNodesOfName(expression.identifier, nodes, checkedNames);
+			}
+			for (VarEntity var:container.getVars()) {
+				addNodesOfSubtree(var, nodes, checkedNames, visited);
+			}
+		}
+		if (entity instanceof TypeEntity) {
+			addNodesOfNames(((TypeEntity) entity).getInheritedTypeIdentifiers(), nodes, checkedNames);
+			addNodesOfNames(((TypeEntity) entity).getImplementedTypeIdentifiers(), nodes, checkedNames);
+		}
+		if (entity instanceof FunctionEntity) {
+			FunctionEntity function = (FunctionEntity)entity;
+			addNodesOfNames(function.getReturnTypeIdentifiers(), nodes, checkedNames);
+			addNodesOfNames(function.getThrowTypeIdentifiers(), nodes, checkedNames);
+			for (VarEntity parameter:function.getParameters()) {
+				addNodesOfSubtree(parameter, nodes, checkedNames, visited);
+			}
+		}
+		if (entity instanceof VarEntity) {
+			addNodesOfName(((VarEntity) entity).getRawType(), nodes, checkedNames);
+		}
+		for (Entity child:entity.getChildren()) {
+			addNodesOfSubtree(child, nodes, checkedNames, visited);
+		}
+	}
+
+	private void addNodesOfNames(Collection<String> names, Set<Integer> nodes, Set<String> checkedNames) {
+		for (String name:names) {
+			addNodesOfName(name, nodes, checkedNames);
+		}
+	}
+
+	/**
+	 * Qualified names are looked up in the repo directly; the first symbol is looked up 
+	 * in scopes, which end up with the file level entities of packages or imports.
+	 */
+	private void addNodesOfName(String name, Set<Integer> nodes, Set<String> checkedNames) {
+		if (name==null || !checkedNames.add(name)) return;
+		int firstEnd = name.indexOf('.');
+		if (firstEnd>=0)
+			addReferencedNodes(repo.getEntity(name.startsWith(".")?name.substring(1):name), nodes);
+		List<Integer> declaringNodes = fileNodesOfName.get(firstEnd<0?name:name.substring(0, firstEnd));
+		if (declaringNodes!=null)
+			nodes.addAll(declaringNodes);
+	}
+
+	private void addReferencedNodes(Collection<Entity> entities, Set<Integer> nodes) {
+		for (Entity entity:entities) {
+			addReferencedNodes(entity, nodes);
+		}
+	}
+
+	private void addReferencedNodes(Entity entity, Set<Integer> nodes) {
+		if (entity==null) return;
+		if (entity instanceof MultiDeclareEntities) {
+			for (Entity declared:((MultiDeclareEntities) entity).getEntities()) {
+				addReferencedNodes(declared, nodes);
+			}
+			return;
+		}
+		if (entity instanceof PackageEntity) {
+			for (Entity child:entity.getChildren()) {
+				Integer node = fileNodes.get(child);
+				if (node!=null)
+					nodes.add(node);
+			}
+			return;
+		}
+		while (entity!=null && !(entity instanceof FileEntity)) {
+			entity = entity.getParent();
+		}
+		if (entity==null) return;
+		Integer node = fileNodes.get(entity);
+		if (node!=null)
+			nodes.add(node);
+	}
+
+	private static int[] toArray(Set<Integer> nodes) {
+		int[] array = new int[nodes.size()];
+		int i = 0;
+		for (Integer node:nodes) {
+			array[i++] = node;
+		}
+		return array;
+	}
+
+	/**
+	 * Tarjan's algorithm without recursion. A component is numbered after 
+	 * all components reachable from it.
+	 * @return the number of components
+	 */
+	private static int findStronglyConnectedComponents(int[][] graph, int[] componentOf) {
+		int n = graph.length;
+		int[] index = new int[n];
+		int[] lowLink = new int[n];
+		int[] edgeCursor = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] callStack = new int[n];
+		int stackSize = 0;
+		int nextIndex = 0;
+		int componentCount = 0;
+		Arrays.fill(index, -1);
+		for (int root=0;root<n;root++) {
+			if (index[root]>=0) continue;
+			int depth = 0;
+			callStack[depth++] = root;
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while (depth>0) {
+				int node = callStack[depth-1];
+				if (edgeCursor[node]<graph[node].length) {
+					int next = graph[node][edgeCursor[node]++];
+					if (index[next]<0) {
+						index[next] = lowLink[next] = nextIndex++;
+						stack[stackSize++] = next;
+						onStack[next] = true;
+						callStack[depth++] = next;
+					}else if (onStack[next]) {
+						lowLink[node] = Math.min(lowLink[node], index[next]);
+					}
+					continue;
+				}
+				depth--;
+				if (depth>0) {
+					int caller = callStack[depth-1];
+					lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+				}
+				if (lowLink[node]==index[node]) {
+					int member;
+					do {
+						member = stack[--stackSize];
+						onStack[member] = false;
+						componentOf[member] = componentCount;
+					}while (member!=node);
+					componentCount++;
+				}
+			}
+		}
+		return componentCount;
+	}
+
+	/**
+	 * The nodes reachable from each component (including its own nodes), as sorted ranges 
+	 * of nodes: {first0, last0, first1, last1, ...}
+	 */
+	private static int[][] computeReach(int[][] graph, int[] componentOf, int componentCount) {
+		List<List<Integer>> nodesOfComponent = new ArrayList<>(componentCount);
+		for (int c=0;c<componentCount;c++) {
+			nodesOfComponent.add(new ArrayList<>(1));
+		}
+		for (int node=0;node<graph.length;node++) {
+			nodesOfComponent.get(componentOf[node]).add(node);
+		}
+		int[][] reach = new int[componentCount][];
+		int[] mergedBy = new int[componentCount];
+		Arrays.fill(mergedBy, -1);
+		List<int[]> ranges = new ArrayList<>();
+		for (int c=0;c<componentCount;c++) {
+			ranges.clear();
+			List<Integer> nodes = nodesOfComponent.get(c);
+			int[] own = new int[nodes.size()*2];
+			for (int i=0;i<nodes.size();i++) {
+				own[i*2] = own[i*2+1] = nodes.get(i);
+			}
+			ranges.add(own);
+			mergedBy[c] = c;
+			for (int node:nodes) {
+				for (int next:graph[node]) {
+					int other = componentOf[next];
+					if (mergedBy[other]==c) continue;
+					mergedBy[other] = c;
+					ranges.add(reach[other]);
+				}
+			}
+			reach[c] = mergeRanges(ranges);
+		}
+		return reach;
+	}
+
+	private static int[] mergeRanges(List<int[]> ranges) {
+		int count = 0;
+		for (int[] range:ranges) {
+			count += range.length/2;
+		}
+		long[] sorted = new long[count];
+		int i = 0;
+		for (int[] range:ranges) {
+			for (int j=0;j<range.length;j+=2) {
+				sorted[i++] = ((long)range[j]<<32) | range[j+1];
+			}
+		}
+		Arrays.sort(sorted);
+		int[] merged = new int[count*2];
+		int size = 0;
+		for (long range:sorted) {
+			int first = (int)(range>>>32);
+			int last = (int)range;
+			if (size>0 && first<=merged[size-1]+1) {
+				merged[size-1] = Math.max(merged[size-1], last);
+			}else {
+				merged[size++] = first;
+				merged[size++] = last;
+			}
+		}
+		return Arrays.copyOf(merged, size);
+	}
+
+	/**
+	 * The wave of a file is after the waves of the earlier files it reaches, and the earlier 
+	 * files reaching it. Two segment trees over the files keep the max wave of the visited files, 
+	 * and the least wave of the files reached by the visited files.
+	 */
+	private void assignWaves(int[] componentOf, int[][] reach) {
+		int size = 1;
+		while (size<files.size()) {
+			size <<= 1;
+		}
+		int[] waveTree = new int[size*2];
+		int[] boundTree = new int[size*2];
+		for (int node=0;node<files.size();node++) {
+			int[] ranges = reach[componentOf[node]];
+			int wave = 0;
+			for (int leaf=node+size;leaf>0;leaf>>=1) {
+				wave = Math.max(wave, boundTree[leaf]);
+			}
+			for (int i=0;i<ranges.length && ranges[i]<node;i+=2) {
+				wave = Math.max(wave, maxOf(waveTree, size, ranges[i], Math.min(ranges[i+1], node-1)));
+			}
+			for (int leaf=node+size;leaf>0;leaf>>=1) {
+				waveTree[leaf] = Math.max(waveTree[leaf], wave+1);
+			}
+			for (int i=0;i<ranges.length;i+=2) {
+				if (ranges[i+1]>node)
+					raiseTo(boundTree, size, Math.max(ranges[i], node+1), ranges[i+1], wave+1);
+			}
+			while (waves.size()<=wave) {
+				waves.add(new ArrayList<>());
+			}
+			waves.get(wave).add(files.get(node));
+		}
+	}
+
+	/**
+	 * The max value of the leaves from first to last (inclusive)
+	 */
+	private static int maxOf(int[] tree, int size, int first, int last) {
+		int max = 0;
+		for (int l=first+size, r=last+size+1; l<r; l>>=1, r>>=1) {
+			if ((l&1)==1) max = Math.max(max, tree[l++]);
+			if ((r&1)==1) max = Math.max(max, tree[--r]);
+		}
+		return max;
+	}
+
+	/**
+	 * Raise the leaves from first to last (inclusive) to at least the value; a leaf is 
+	 * the max value on its path to the root
+	 */
+	private static void raiseTo(int[] tree, int size, int first, int last, int value) {
+		for (int l=first+size, r=last+size+1; l<r; l>>=1, r>>=1) {
+			if ((l&1)==1) {
+				tree[l] = Math.max(tree[l], value);
+				l++;
+			}
+			if ((r&1)==1) {
+				r--;
+				tree[r] = Math.max(tree[r], value);
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*
+MIT License
+
+Copyright (c) 2018-2019 Gang ZHANG
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package depends.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SymbolTable interns names, like raw names of entities, identifiers and raw types of 
+ * expressions, and imports. Each distinct name is kept only once and gets an int id, 
+ * so names could be compared by id instead of by chars.
+ * Each name tree has its own table (see {@link depends.entity.QualifiedName#newTree()}), 
+ * so the table lives with the repo. The table is shared by all parsers of the repo 
+ * and is thread safe.
+ */
+public class SymbolTable {
+	/* the id of names never interned; no entity has such a name */
+	public static final int NO_SYMBOL = -1;
+	/* shared by all tables, so the symbols of different tables never have the same id */
+	private static final AtomicInteger nextId = new AtomicInteger();
+	private final ConcurrentHashMap<String, Symbol> symbols = new ConcurrentHashMap<>();
+
+	/**
+	 * The symbol of the name, created if not exists
+	 * @param name - not null
+	 * @return
+	 */
+	public Symbol symbolOf(String name) {
+		Symbol symbol = symbols.get(name);
+		if (symbol!=null)
+			return symbol;
+		return symbols.computeIfAbsent(name, n->new Symbol(n, nextId.getAndIncrement()));
+	}
+
+	/**
+	 * The unique instance of the name
+	 * @param name
+	 * @return null if the name is null
+	 */
+	public String intern(String name) {
+		if (name==null) return null;
+		return symbolOf(name).name;
+	}
+
+	/**
+	 * The id of the name, without interning it
+	 * @param name
+	 * @return the id, or NO_SYMBOL if the name is never interned
+	 */
+	public int lookup(String name) {
+		Symbol symbol = symbols.get(name);
+		return symbol==null?NO_SYMBOL:symbol.id;
+	}
+
+	public int size() {
+		return symbols.size();
+	}
+
+	public static class Symbol {
+		public final String name;
+		public final int id;
+
+		Symbol(String name, int id) {
+			this.name = name;
+			this.id = id;
+		}
+	}
+}